@@ -19,6 +19,7 @@ package com.zhouk.zxing;
 
 import com.zhouk.zxing.common.BitArray;
 import com.zhouk.zxing.common.BitMatrix;
+import com.zhouk.zxing.common.BitPool;
 
 /**
  * This class is the core bitmap class used by ZXing to represent 1 bit data. Reader objects
@@ -83,11 +84,22 @@ public final class BinaryBitmap {
     //    1D Reader finds a barcode before the 2D Readers run.
     // 2. This work will only be done once even if the caller installs multiple 2D Readers.
     if (matrix == null) {
+      DecodeMetrics.enter(DecodeMetrics.Stage.BINARIZE);
       matrix = binarizer.getBlackMatrix();
     }
     return matrix;
   }
 
+  /**
+   * Hands the black matrix, if one was made, back to the calling thread's {@link BitPool} for the
+   * next frame's binarizer to reuse. Neither this bitmap nor its binarizer may be used afterwards,
+   * and nothing obtained from {@link #getBlackMatrix()} may be kept.
+   */
+  public void recycle() {
+    BitPool.release(matrix);
+    matrix = null;
+  }
+
   /**
    * @return Whether this bitmap can be cropped.
    */
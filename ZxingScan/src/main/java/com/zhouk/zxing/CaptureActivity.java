@@ -64,6 +64,13 @@ public abstract class CaptureActivity extends Activity implements SurfaceHolder.
         return handler;
     }
 
+    /**
+     * @return the frame of the last successful decode, until scanning is restarted, or null
+     */
+    public ScanFrame getLastScanFrame() {
+        return handler == null ? null : handler.getLastScanFrame();
+    }
+
     CameraManager getCameraManager() {
         return cameraManager;
     }
@@ -21,10 +21,7 @@ import android.content.ActivityNotFoundException;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.provider.Browser;
@@ -46,6 +43,7 @@ public final class CaptureActivityHandler extends Handler {
     private final DecodeThread decodeThread;
     private State state;
     private final CameraManager cameraManager;
+    private ScanFrame lastScanFrame;
 
     private enum State {
         PREVIEW,
@@ -72,23 +70,15 @@ public final class CaptureActivityHandler extends Handler {
             restartPreviewAndDecode();
 
         } else if (message.what == R.id.decode_succeeded) {
+            ScanFrame frame = (ScanFrame) message.obj;
             if (state == State.SUCCESS) {
+                frame.release();
                 return;
             }
             state = State.SUCCESS;
-            Bundle bundle = message.getData();
-            Bitmap barcode = null;
-            float scaleFactor = 1.0f;
-            if (bundle != null) {
-                byte[] compressedBitmap = bundle.getByteArray(DecodeThread.BARCODE_BITMAP);
-                if (compressedBitmap != null) {
-                    barcode = BitmapFactory.decodeByteArray(compressedBitmap, 0, compressedBitmap.length, null);
-                    // Mutable copy:
-                    barcode = barcode.copy(Bitmap.Config.ARGB_8888, true);
-                }
-                scaleFactor = bundle.getFloat(DecodeThread.BARCODE_SCALED_FACTOR);
-            }
-            activity.handleResult((Result) message.obj, barcode, scaleFactor);
+            lastScanFrame = frame;
+            // handleResult takes a Bitmap, so the thumbnail is rendered here, once per result
+            activity.handleResult(frame.getResult(), frame.getThumbnail(), frame.getScaleFactor());
 
         }  else if (message.what == R.id.decode_failed) {// We're decoding as fast as possible, so when one decode fails, start another.
             state = State.PREVIEW;
@@ -162,11 +152,29 @@ public final class CaptureActivityHandler extends Handler {
         // Be absolutely sure we don't send any queued up messages
         removeMessages(R.id.decode_succeeded);
         removeMessages(R.id.decode_failed);
+        releaseLastScanFrame();
+    }
+
+    /**
+     * @return the frame of the last successful decode, until scanning is restarted
+     */
+    public ScanFrame getLastScanFrame() {
+        return lastScanFrame;
+    }
+
+    private void releaseLastScanFrame() {
+        if (lastScanFrame != null) {
+            lastScanFrame.release();
+            lastScanFrame = null;
+        }
     }
 
     private void restartPreviewAndDecode() {
         if (state == State.SUCCESS) {
             state = State.PREVIEW;
+            releaseLastScanFrame();
+            // Queued ahead of the next frame, so the decode workers accept results again
+            Message.obtain(decodeThread.getHandler(), R.id.restart_preview).sendToTarget();
             cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
         }
     }
@@ -50,6 +50,7 @@ public class CaptureImpl implements ResultCallBack {
     private ResultCallBack resultCallBack;
     private double cropWight = -1;
     private double cropHeight = -1;
+    private boolean continuousScanning;
 
     public CaptureImpl(ZxingCallBack callBack) {
         this.callBack = callBack;
@@ -159,6 +160,14 @@ public class CaptureImpl implements ResultCallBack {
         return handler;
     }
 
+    /**
+     * 最近一次识别成功的预览帧，重新扫码后失效
+     * @return the frame of the last successful decode, or null
+     */
+    public ScanFrame getLastScanFrame() {
+        return handler == null ? null : handler.getLastScanFrame();
+    }
+
 
     private void initCamera(SurfaceHolder surfaceHolder) {
         if (surfaceHolder == null) {
@@ -173,6 +182,9 @@ public class CaptureImpl implements ResultCallBack {
             // Creating the handler starts the preview, which can also throw a RuntimeException.
             if (handler == null) {
                 handler = new CaptureImplHandler(resultCallBack,  cameraManager);
+                if (continuousScanning) {
+                    handler.setContinuous(true);
+                }
             }
         } catch (IOException ioe) {
             Log.e(TAG, "Do you apply for camera permission?");
@@ -191,6 +203,17 @@ public class CaptureImpl implements ResultCallBack {
         }
     }
 
+    /**
+     * 连续扫码：识别成功后不停止扫描，同一个码在离开画面一段时间之前不会重复回调
+     * @param continuousScanning true to keep scanning after each result
+     */
+    public void setContinuousScanning(boolean continuousScanning) {
+        this.continuousScanning = continuousScanning;
+        if (handler != null) {
+            handler.setContinuous(continuousScanning);
+        }
+    }
+
     @Override
     public Rect getScanRect() {
         return scanRect;
@@ -16,9 +16,6 @@
 
 package com.zhouk.zxing;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 
@@ -34,6 +31,8 @@ public final class CaptureImplHandler extends Handler {
     private final DecodeImplThread decodeThread;
     private State state;
     private final CameraManager cameraManager;
+    private ScanFrame lastScanFrame;
+    private boolean continuous;
 
     private enum State {
         PREVIEW,
@@ -60,23 +59,21 @@ public final class CaptureImplHandler extends Handler {
             restartPreviewAndDecode();
 
         } else if (message.what == R.id.decode_succeeded) {
+            ScanFrame frame = (ScanFrame) message.obj;
             if (state == State.SUCCESS) {
+                frame.release();
                 return;
             }
-            state = State.SUCCESS;
-            Bundle bundle = message.getData();
-            Bitmap barcode = null;
-            float scaleFactor = 1.0f;
-            if (bundle != null) {
-                byte[] compressedBitmap = bundle.getByteArray(DecodeThread.BARCODE_BITMAP);
-                if (compressedBitmap != null) {
-                    barcode = BitmapFactory.decodeByteArray(compressedBitmap, 0, compressedBitmap.length, null);
-                    // Mutable copy:
-                    barcode = barcode.copy(Bitmap.Config.RGB_565, true);
-                }
-                scaleFactor = bundle.getFloat(DecodeThread.BARCODE_SCALED_FACTOR);
+            releaseLastScanFrame();
+            lastScanFrame = frame;
+            if (continuous) {
+                // Repeats of this symbol are dropped by the decoder, so just keep going
+                cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+            } else {
+                state = State.SUCCESS;
             }
-            callBack.handleResult((Result) message.obj, barcode, scaleFactor);
+            // handleResult takes a Bitmap, so the thumbnail is rendered here, once per result
+            callBack.handleResult(frame.getResult(), frame.getThumbnail(), frame.getScaleFactor());
 
         }  else if (message.what == R.id.decode_failed) {// We're decoding as fast as possible, so when one decode fails, start another.
             state = State.PREVIEW;
@@ -113,11 +110,43 @@ public final class CaptureImplHandler extends Handler {
         // Be absolutely sure we don't send any queued up messages
         removeMessages(R.id.decode_succeeded);
         removeMessages(R.id.decode_failed);
+        releaseLastScanFrame();
+    }
+
+    /**
+     * In continuous mode scanning goes on after a successful decode, and each symbol is only
+     * delivered again after it has been out of view for a while.
+     */
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+        Message.obtain(decodeThread.getHandler(), R.id.continuous_scan, continuous ? 1 : 0, 0)
+                .sendToTarget();
+        if (continuous) {
+            // Resume a scan which already ended with a result
+            restartPreviewAndDecode();
+        }
+    }
+
+    /**
+     * @return the frame of the last successful decode, until scanning is restarted
+     */
+    public ScanFrame getLastScanFrame() {
+        return lastScanFrame;
+    }
+
+    private void releaseLastScanFrame() {
+        if (lastScanFrame != null) {
+            lastScanFrame.release();
+            lastScanFrame = null;
+        }
     }
 
     private void restartPreviewAndDecode() {
         if (state == State.SUCCESS) {
             state = State.PREVIEW;
+            releaseLastScanFrame();
+            // Queued ahead of the next frame, so the decode workers accept results again
+            Message.obtain(decodeThread.getHandler(), R.id.restart_preview).sendToTarget();
             cameraManager.requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
         }
     }
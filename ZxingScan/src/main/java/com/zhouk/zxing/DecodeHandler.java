@@ -16,34 +16,38 @@
 
 package com.zhouk.zxing;
 
-import android.graphics.Bitmap;
-
-
-import android.os.Bundle;
+import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 
-import com.zhouk.zxing.common.GlobalHistogramBinarizer;
+import com.zhouk.zxing.camera.CameraManager;
+import com.zhouk.zxing.common.BlackPointSmoother;
+import com.zhouk.zxing.decode.BinarizerCascade;
+import com.zhouk.zxing.decode.FrameDecoder;
+import com.zhouk.zxing.decode.FrameQualityFilter;
+import com.zhouk.zxing.decode.RegionTracker;
 
-import java.io.ByteArrayOutputStream;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
-final class DecodeHandler extends Handler {
-    ExecutorService pool = Executors.newFixedThreadPool(10);
+final class DecodeHandler extends Handler implements FrameDecoder.Listener {
     private static final String TAG = DecodeHandler.class.getSimpleName();
 
     private final CaptureActivity activity;
-    private final MultiFormatReader multiFormatReader;
+    private final FrameDecoder frameDecoder;
     private boolean running = true;
 
     DecodeHandler(CaptureActivity activity, Map<DecodeHintType, Object> hints) {
-        multiFormatReader = new MultiFormatReader();
-        multiFormatReader.setHints(hints);
         this.activity = activity;
+        frameDecoder = new FrameDecoder(FrameDecoder.defaultWorkerCount(), hints,
+                FrameDecoder.DIRECT_EXECUTOR, this);
+        // Don't spend a binarization on frames blurred by focus or hand movement
+        frameDecoder.setQualityFilter(new FrameQualityFilter());
+        frameDecoder.setRegionTracker(new RegionTracker());
+        frameDecoder.setBinarizerCascade(new BinarizerCascade());
+        frameDecoder.setBlackPointSmoother(new BlackPointSmoother());
+        frameDecoder.setMultiResolution(true);
     }
 
     @Override
@@ -53,118 +57,75 @@ final class DecodeHandler extends Handler {
         }
         if (message.what == R.id.decode) {
             decode((byte[]) message.obj, message.arg1, message.arg2);
-//            if(!pool.isShutdown()){
-//                pool.execute(new MyRunning((byte[]) message.obj, message.arg1, message.arg2));
-//                activity.getCameraManager().requestPreviewFrame(this, R.id.decode);
-//            }
+            // Keep the other workers busy instead of waiting for this frame to fail
+            if (frameDecoder.hasIdleWorker()) {
+                activity.getCameraManager().requestPreviewFrame(this, R.id.decode);
+            }
+        } else if (message.what == R.id.restart_preview) {
+            frameDecoder.restart();
         } else if (message.what == R.id.quit) {
             running = false;
+            frameDecoder.shutdown();
+            FrameQualityFilter filter = frameDecoder.getQualityFilter();
+            Log.d(TAG, "Skipped " + filter.getSkippedFrames() + " of " + filter.getScoredFrames()
+                    + " frames before binarization");
+            RegionTracker tracker = frameDecoder.getRegionTracker();
+            Log.d(TAG, "Searched " + tracker.getNarrowedFrames() + " frames in the tracked region, "
+                    + tracker.getFullFrames() + " in full");
+            BinarizerCascade cascade = frameDecoder.getBinarizerCascade();
+            Log.d(TAG, "Binarizer hits: global " + cascade.getHits(BinarizerCascade.Stage.GLOBAL)
+                    + "/" + cascade.getAttempts(BinarizerCascade.Stage.GLOBAL)
+                    + ", hybrid " + cascade.getHits(BinarizerCascade.Stage.HYBRID)
+                    + "/" + cascade.getAttempts(BinarizerCascade.Stage.HYBRID));
+            if (DecodeMetrics.isEnabled()) {
+                Log.d(TAG, DecodeMetrics.snapshot().toString());
+            }
             Looper.myLooper().quit();
 
         }
     }
 
     /**
-     * Decode the data within the viewfinder rectangle, and time how long it took. For efficiency,
-     * reuse the same reader objects from one decode to the next.
+     * Hands the data within the viewfinder rectangle to the decode workers.
      *
      * @param data   The YUV preview frame.
      * @param width  The width of the preview frame.
      * @param height The height of the preview frame.
      */
     private void decode(byte[] data, int width, int height) {
-        Result rawResult = null;
-        PlanarYUVLuminanceSource source = activity.getCameraManager().buildLuminanceSource(data,
-                width, height, activity.getScanWith(), activity.getScanHeight());
-        if (source != null) {
-            BinaryBitmap bitmap = new BinaryBitmap(new GlobalHistogramBinarizer(source));
-            try {
-                rawResult = multiFormatReader.decodeWithState(bitmap);
-            } catch (ReaderException re) {
-                // continue
-            } finally {
-                multiFormatReader.reset();
-            }
-        }
+        CameraManager cameraManager = activity.getCameraManager();
+        Rect crop = cameraManager.getCropRectInPreview(width, height,
+                activity.getScanWith(), activity.getScanHeight());
+        // Recorded here rather than in the camera callback, so the capture holds this frame's crop
+        cameraManager.recordFrame(data, width, height, crop);
+        frameDecoder.decode(data, width, height, crop.left, crop.top, crop.width(), crop.height());
+    }
 
+    @Override
+    public void onDecodeSucceeded(Result rawResult, PlanarYUVLuminanceSource source, byte[] data) {
+        // Failed frames never get a thumbnail; this one is rendered when the capture handler
+        // hands the result to the host, and the frame stays pinned until the next scan
+        ScanFrame frame = new ScanFrame(rawResult, source, data, activity.getCameraManager());
         Handler handler = activity.getHandler();
-        if (rawResult != null) {
-            if (handler != null) {
-                Message message = Message.obtain(handler, R.id.decode_succeeded, rawResult);
-                Bundle bundle = new Bundle();
-                bundleThumbnail(source, bundle);
-                message.setData(bundle);
-                message.sendToTarget();
-            }
+        if (handler != null) {
+            Message.obtain(handler, R.id.decode_succeeded, frame).sendToTarget();
         } else {
-            if (handler != null) {
-                Message message = Message.obtain(handler, R.id.decode_failed);
-                Bundle bundle = new Bundle();
-                bundleThumbnail(source, bundle);
-                message.setData(bundle);
-                message.sendToTarget();
-            }
+            frame.release();
         }
     }
 
-    private static void bundleThumbnail(PlanarYUVLuminanceSource source, Bundle bundle) {
-        int[] pixels = source.renderThumbnail();
-        int width = source.getThumbnailWidth();
-        int height = source.getThumbnailHeight();
-        Bitmap bitmap = Bitmap.createBitmap(pixels, 0, width, width, height, Bitmap.Config.ARGB_8888);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 50, out);
-        bundle.putByteArray(DecodeThread.BARCODE_BITMAP, out.toByteArray());
-        bundle.putFloat(DecodeThread.BARCODE_SCALED_FACTOR, (float) width / source.getWidth());
-    }
-
-    class MyRunning implements Runnable {
-        private byte[] data;
-        private int width,height;
-        public MyRunning(byte[] data, int width, int height) {
-            this.data = data;
-            this.width = width;
-            this.height = height;
-        }
-
-        @Override
-        public void run() {
-            Log.e(TAG, "执行running。。。。 ");
-            Result rawResult = null;
-            PlanarYUVLuminanceSource source = activity.getCameraManager().buildLuminanceSource(data,
-                    width, height, activity.getScanWith(), activity.getScanHeight());
-            if (source != null) {
-                BinaryBitmap bitmap = new BinaryBitmap(new GlobalHistogramBinarizer(source));
-                try {
-                    rawResult = multiFormatReader.decodeWithState(bitmap);
-                } catch (ReaderException re) {
-                    // continue
-                } finally {
-                    multiFormatReader.reset();
-                }
-            }
-
-            Handler handler = activity.getHandler();
-            if (rawResult != null) {
-                if (handler != null) {
-                    pool.shutdown();
-                    Message message = Message.obtain(handler, R.id.decode_succeeded, rawResult);
-                    Bundle bundle = new Bundle();
-                    bundleThumbnail(source, bundle);
-                    message.setData(bundle);
-                    message.sendToTarget();
-                }
-            } else {
-                if (handler != null) {
-                    Message message = Message.obtain(handler, R.id.decode_failed);
-//                    Bundle bundle = new Bundle();
-//                    bundleThumbnail(source, bundle);
-//                    message.setData(bundle);
-                    message.sendToTarget();
-                }
-            }
+    @Override
+    public void onDecodeFailed() {
+        Handler handler = activity.getHandler();
+        if (handler != null) {
+            Message.obtain(handler, R.id.decode_failed).sendToTarget();
         }
+    }
 
+    @Override
+    public void onFrameReleased(byte[] data) {
+        // The frame may belong to the camera's buffer ring; hand it back for the next preview.
+        activity.getCameraManager().releasePreviewBuffer(data);
     }
 
 }
@@ -99,6 +99,12 @@ public enum DecodeHintType {
    */
   ALLOWED_EAN_EXTENSIONS(int[].class),
 
+  /**
+   * Also look for barcodes printed light on a dark background, by decoding the inverted black
+   * matrix when the normal attempt fails. Doesn't matter what it maps to; use {@link Boolean#TRUE}.
+   */
+  ALSO_INVERTED(Void.class),
+
   // End of enumeration values.
   ;
 
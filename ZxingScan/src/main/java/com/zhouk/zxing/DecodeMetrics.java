@@ -0,0 +1,358 @@
+/*
+ * Copyright 2007 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing;
+
+
+/**
+ * Per-stage timings and failure causes of frame decodes.
+ *
+ * A frame is measured between {@link #beginFrame()} and {@link #endFrame(boolean)} on the thread
+ * decoding it. In between, the decoder marks each stage it {@link #enter enters}; a stage lasts
+ * until the next one is entered or the frame ends. The readers signal failure through shared
+ * exception instances, so a frame which does not decode is blamed on the stage it was in when it
+ * ended.
+ *
+ * Metrics are off by default. While disabled every call returns after reading one volatile flag,
+ * so the hooks can stay in production builds.
+ */
+public final class DecodeMetrics {
+
+  /**
+   * The stages of a decode, in the order they run.
+   */
+  public enum Stage {
+    /** Choosing and wrapping the area of the frame to decode. */
+    CROP,
+    /** Scoring the frame's sharpness and motion; frames that fail here were skipped. */
+    QUALITY,
+    /** Thresholding luminance into a bit matrix. */
+    BINARIZE,
+    /** Searching for the three finder patterns. */
+    FINDER,
+    /** Estimating the symbol size and searching for the alignment pattern. */
+    ALIGNMENT,
+    /** Sampling the module grid through the perspective transform. */
+    GRID_SAMPLE,
+    /** Reading version, format information and codewords from the sampled grid. */
+    FORMAT,
+    /** Reed-Solomon error correction. */
+    REED_SOLOMON,
+    /** Parsing the corrected bitstream into text. */
+    PARSE
+  }
+
+  /**
+   * Receives every measured frame, on the thread which decoded it.
+   */
+  public interface Listener {
+
+    /**
+     * @param timings the frame's measurements, only valid during this call
+     */
+    void onFrameMeasured(FrameTimings timings);
+  }
+
+  /**
+   * Measurements of one frame.
+   */
+  public static final class FrameTimings {
+
+    private final long[] stageNanos = new long[STAGES.length];
+    private Stage currentStage;
+    private long stageStart;
+    private long frameStart;
+    private long totalNanos;
+    private boolean active;
+    private boolean decoded;
+
+    void begin() {
+      for (int i = 0; i < stageNanos.length; i++) {
+        stageNanos[i] = -1;
+      }
+      currentStage = null;
+      active = true;
+      frameStart = System.nanoTime();
+    }
+
+    void enter(Stage stage) {
+      long now = System.nanoTime();
+      close(now);
+      currentStage = stage;
+      stageStart = now;
+    }
+
+    void end(boolean decoded) {
+      long now = System.nanoTime();
+      close(now);
+      active = false;
+      totalNanos = now - frameStart;
+      this.decoded = decoded;
+    }
+
+    private void close(long now) {
+      if (currentStage != null) {
+        int index = currentStage.ordinal();
+        // A stage can run more than once per frame, e.g. for a second binarizer
+        stageNanos[index] = Math.max(stageNanos[index], 0) + now - stageStart;
+      }
+    }
+
+    /**
+     * @return time spent in the stage, or -1 if the frame never reached it
+     */
+    public long getNanos(Stage stage) {
+      return stageNanos[stage.ordinal()];
+    }
+
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    public boolean isDecoded() {
+      return decoded;
+    }
+
+    /**
+     * @return the stage the frame failed in, or null if it decoded
+     */
+    public Stage getFailedStage() {
+      return decoded ? null : currentStage;
+    }
+  }
+
+  /**
+   * Totals over all frames measured since metrics were enabled or last reset.
+   */
+  public static final class Snapshot {
+
+    private final long frames;
+    private final long decoded;
+    private final long[] failures;
+    private final long[] stageFrames;
+    private final long[] stageNanos;
+    private final long[][] stageHistograms;
+    private final long[] frameHistogram;
+
+    Snapshot(long frames, long decoded, long[] failures, long[] stageFrames, long[] stageNanos,
+             long[][] stageHistograms, long[] frameHistogram) {
+      this.frames = frames;
+      this.decoded = decoded;
+      this.failures = failures;
+      this.stageFrames = stageFrames;
+      this.stageNanos = stageNanos;
+      this.stageHistograms = stageHistograms;
+      this.frameHistogram = frameHistogram;
+    }
+
+    public long getFrames() {
+      return frames;
+    }
+
+    public long getDecoded() {
+      return decoded;
+    }
+
+    /**
+     * @return frames which failed in the stage
+     */
+    public long getFailures(Stage stage) {
+      return failures[stage.ordinal()];
+    }
+
+    /**
+     * @return frames which reached the stage
+     */
+    public long getFrames(Stage stage) {
+      return stageFrames[stage.ordinal()];
+    }
+
+    public long getMeanNanos(Stage stage) {
+      int index = stage.ordinal();
+      return stageFrames[index] == 0 ? 0 : stageNanos[index] / stageFrames[index];
+    }
+
+    /**
+     * @return frame counts per time bucket; bucket i counts stage times in
+     *  [2<sup>i</sup>, 2<sup>i+1</sup>) microseconds, the first and last bucket being open ended
+     */
+    public long[] getHistogram(Stage stage) {
+      return stageHistograms[stage.ordinal()].clone();
+    }
+
+    /**
+     * @return histogram of whole-frame times, bucketed like {@link #getHistogram(Stage)}
+     */
+    public long[] getFrameHistogram() {
+      return frameHistogram.clone();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder();
+      result.append(frames).append(" frames, ").append(decoded).append(" decoded");
+      for (Stage stage : STAGES) {
+        int index = stage.ordinal();
+        if (stageFrames[index] > 0) {
+          result.append("; ").append(stage).append(' ')
+              .append(getMeanNanos(stage) / 1000).append("us");
+          if (failures[index] > 0) {
+            result.append(", ").append(failures[index]).append(" failed");
+          }
+        }
+      }
+      return result.toString();
+    }
+  }
+
+  public static final int HISTOGRAM_BUCKETS = 20;
+
+  private static final Stage[] STAGES = Stage.values();
+
+  private static final ThreadLocal<FrameTimings> CURRENT = new ThreadLocal<FrameTimings>() {
+    @Override
+    protected FrameTimings initialValue() {
+      return new FrameTimings();
+    }
+  };
+
+  private static final Object LOCK = new Object();
+
+  private static volatile boolean enabled;
+  private static volatile Listener listener;
+
+  private static long frames;
+  private static long decoded;
+  private static final long[] failures = new long[STAGES.length];
+  private static final long[] stageFrames = new long[STAGES.length];
+  private static final long[] stageNanos = new long[STAGES.length];
+  private static final long[][] stageHistograms = new long[STAGES.length][HISTOGRAM_BUCKETS];
+  private static final long[] frameHistogram = new long[HISTOGRAM_BUCKETS];
+
+  private DecodeMetrics() {
+  }
+
+  public static void setEnabled(boolean enabled) {
+    DecodeMetrics.enabled = enabled;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @param listener receives each measured frame, or null
+   */
+  public static void setListener(Listener listener) {
+    DecodeMetrics.listener = listener;
+  }
+
+  /**
+   * Starts measuring a frame on the calling thread.
+   */
+  public static void beginFrame() {
+    if (enabled) {
+      CURRENT.get().begin();
+    }
+  }
+
+  /**
+   * Marks the start of a stage of the frame being measured on the calling thread, which ends the
+   * previous stage. Does nothing outside {@link #beginFrame()} and {@link #endFrame(boolean)}.
+   */
+  public static void enter(Stage stage) {
+    if (enabled) {
+      FrameTimings timings = CURRENT.get();
+      if (timings.active) {
+        timings.enter(stage);
+      }
+    }
+  }
+
+  /**
+   * Finishes the frame being measured on the calling thread and adds it to the totals.
+   */
+  public static void endFrame(boolean frameDecoded) {
+    if (!enabled) {
+      return;
+    }
+    FrameTimings timings = CURRENT.get();
+    if (!timings.active) {
+      return;
+    }
+    timings.end(frameDecoded);
+    synchronized (LOCK) {
+      frames++;
+      if (frameDecoded) {
+        decoded++;
+      } else if (timings.currentStage != null) {
+        failures[timings.currentStage.ordinal()]++;
+      }
+      for (int i = 0; i < STAGES.length; i++) {
+        long nanos = timings.stageNanos[i];
+        if (nanos >= 0) {
+          stageFrames[i]++;
+          stageNanos[i] += nanos;
+          stageHistograms[i][bucket(nanos)]++;
+        }
+      }
+      frameHistogram[bucket(timings.totalNanos)]++;
+    }
+    Listener frameListener = listener;
+    if (frameListener != null) {
+      frameListener.onFrameMeasured(timings);
+    }
+  }
+
+  private static int bucket(long nanos) {
+    long micros = nanos / 1000;
+    int bucket = 63 - Long.numberOfLeadingZeros(micros | 1);
+    return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+  }
+
+  public static Snapshot snapshot() {
+    synchronized (LOCK) {
+      long[][] histograms = new long[STAGES.length][];
+      for (int i = 0; i < STAGES.length; i++) {
+        histograms[i] = stageHistograms[i].clone();
+      }
+      return new Snapshot(frames, decoded, failures.clone(), stageFrames.clone(),
+          stageNanos.clone(), histograms, frameHistogram.clone());
+    }
+  }
+
+  /**
+   * Clears the totals.
+   */
+  public static void reset() {
+    synchronized (LOCK) {
+      frames = 0;
+      decoded = 0;
+      for (int i = 0; i < STAGES.length; i++) {
+        failures[i] = 0;
+        stageFrames[i] = 0;
+        stageNanos[i] = 0;
+        for (int j = 0; j < HISTOGRAM_BUCKETS; j++) {
+          stageHistograms[i][j] = 0;
+        }
+      }
+      for (int j = 0; j < HISTOGRAM_BUCKETS; j++) {
+        frameHistogram[j] = 0;
+      }
+    }
+  }
+
+}
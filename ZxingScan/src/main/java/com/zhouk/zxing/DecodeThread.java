@@ -35,9 +35,6 @@ import java.util.concurrent.CountDownLatch;
  */
 final class DecodeThread extends Thread {
 
-    public static final String BARCODE_BITMAP = "barcode_bitmap";
-    public static final String BARCODE_SCALED_FACTOR = "barcode_scaled_factor";
-
     private final CaptureActivity activity;
     private Handler handler;
     private final CountDownLatch handlerInitLatch;
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing;
+
+
+/**
+ * A wrapper implementation of {@link LuminanceSource} at half the resolution of its delegate, each
+ * pixel being the average of a 2x2 box of the delegate's. An odd last row or column is dropped.
+ * Wrapping one in another gives quarter resolution.
+ *
+ * The luminances are only computed when first asked for, reading the delegate through
+ * {@link LuminanceSource#getStridedMatrix()}, and go into a buffer the caller may hand in, so
+ * that a pyramid of these built for every preview frame allocates nothing.
+ */
+public final class DownsampledLuminanceSource extends LuminanceSource {
+
+  private final LuminanceSource delegate;
+  private final byte[] matrix;
+  private boolean built;
+
+  public DownsampledLuminanceSource(LuminanceSource delegate) {
+    this(delegate, null);
+  }
+
+  /**
+   * @param buffer array of at least a quarter of the delegate's pixels to hold the luminances,
+   *  or null to allocate one
+   */
+  public DownsampledLuminanceSource(LuminanceSource delegate, byte[] buffer) {
+    super(delegate.getWidth() / 2, delegate.getHeight() / 2);
+    int length = getWidth() * getHeight();
+    if (buffer != null && buffer.length < length) {
+      throw new IllegalArgumentException("Buffer too small");
+    }
+    this.delegate = delegate;
+    matrix = buffer != null ? buffer : new byte[length];
+  }
+
+  /**
+   * @return the source this one halves
+   */
+  public LuminanceSource getDelegate() {
+    return delegate;
+  }
+
+  private void build() {
+    if (built) {
+      return;
+    }
+    int width = getWidth();
+    int height = getHeight();
+    byte[] source = delegate.getStridedMatrix();
+    int stride = delegate.getMatrixStride();
+    int inputOffset = delegate.getMatrixOffset();
+    int outputOffset = 0;
+    for (int y = 0; y < height; y++, inputOffset += 2 * stride, outputOffset += width) {
+      for (int x = 0, top = inputOffset; x < width; x++, top += 2) {
+        int bottom = top + stride;
+        int sum = (source[top] & 0xFF) + (source[top + 1] & 0xFF)
+            + (source[bottom] & 0xFF) + (source[bottom + 1] & 0xFF);
+        matrix[outputOffset + x] = (byte) ((sum + 2) >> 2);
+      }
+    }
+    built = true;
+  }
+
+  @Override
+  public byte[] getRow(int y, byte[] row) {
+    if (y < 0 || y >= getHeight()) {
+      throw new IllegalArgumentException("Requested row is outside the image: " + y);
+    }
+    build();
+    int width = getWidth();
+    if (row == null || row.length < width) {
+      row = new byte[width];
+    }
+    System.arraycopy(matrix, y * width, row, 0, width);
+    return row;
+  }
+
+  @Override
+  public byte[] getMatrix() {
+    build();
+    int length = getWidth() * getHeight();
+    if (matrix.length == length) {
+      return matrix;
+    }
+    byte[] exact = new byte[length];
+    System.arraycopy(matrix, 0, exact, 0, length);
+    return exact;
+  }
+
+  /**
+   * Hands out the buffer itself, which may be longer than the image.
+   */
+  @Override
+  public byte[] getStridedMatrix() {
+    build();
+    return matrix;
+  }
+
+}
@@ -60,6 +60,32 @@ public abstract class LuminanceSource {
    */
   public abstract byte[] getMatrix();
 
+  /**
+   * Fetches luminance data for the underlying bitmap like {@link #getMatrix()}, but laid out with
+   * a stride, so that implementations backed by a larger buffer can hand it out without copying
+   * the crop. Values should be fetched using:
+   * {@code int luminance = array[getMatrixOffset() + y * getMatrixStride() + x] & 0xff}
+   *
+   * @return An array containing the luminance data. Do not modify the contents of the result.
+   */
+  public byte[] getStridedMatrix() {
+    return getMatrix();
+  }
+
+  /**
+   * @return Index of the top left pixel in {@link #getStridedMatrix()}.
+   */
+  public int getMatrixOffset() {
+    return 0;
+  }
+
+  /**
+   * @return Distance between the starts of two rows in {@link #getStridedMatrix()}.
+   */
+  public int getMatrixStride() {
+    return width;
+  }
+
   /**
    * @return The width of the bitmap.
    */
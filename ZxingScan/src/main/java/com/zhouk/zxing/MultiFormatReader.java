@@ -17,6 +17,7 @@
 package com.zhouk.zxing;
 
 
+import com.zhouk.zxing.common.BitMatrix;
 import com.zhouk.zxing.datamatrix.DataMatrixReader;
 import com.zhouk.zxing.oned.MultiFormatOneDReader;
 import com.zhouk.zxing.qrcode.QRCodeReader;
@@ -167,11 +168,27 @@ public final class MultiFormatReader implements Reader {
 
   private Result decodeInternal(BinaryBitmap image) throws NotFoundException {
     if (qrReader != null) {
+        boolean alsoInverted = hints != null && hints.containsKey(DecodeHintType.ALSO_INVERTED);
+        // Binarize up front, so a frame which fails there is not binarized again for the
+        // inverted attempt
+        BitMatrix matrix = alsoInverted ? image.getBlackMatrix() : null;
         try {
           return qrReader.decode(image, hints);
         } catch (ReaderException re) {
           // continue
         }
+        if (alsoInverted) {
+          // Invert the cached matrix in place rather than binarizing an inverted source, and put
+          // it back afterwards for whoever reads the bitmap next
+          matrix.flip();
+          try {
+            return qrReader.decode(image, hints);
+          } catch (ReaderException re) {
+            // continue
+          } finally {
+            matrix.flip();
+          }
+        }
     }
     throw NotFoundException.getNotFoundInstance();
   }
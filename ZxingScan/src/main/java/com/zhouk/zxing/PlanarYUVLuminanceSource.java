@@ -25,6 +25,11 @@ package com.zhouk.zxing;
  * It works for any pixel format where the Y channel is planar and appears first, including
  * YCbCr_420_SP and YCbCr_422_SP.
  *
+ * Mirrored and rotated sources are views of the same data: pixel (x, y) is read from
+ * {@code origin + x * xStep + y * yStep}, where each step is one pixel or one data row in either
+ * direction. The camera buffer is never modified, so it can go back to the camera as soon as the
+ * decode is done, and rotating for a portrait or sideways scan costs nothing until pixels are read.
+ *
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class PlanarYUVLuminanceSource extends LuminanceSource {
@@ -34,9 +39,14 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
   private final byte[] yuvData;
   private final int dataWidth;
   private final int dataHeight;
-  private final int left;
-  private final int top;
+  // Data index of pixel (0, 0), and how far the index moves for one pixel right and one row down
+  private final int origin;
+  private final int xStep;
+  private final int yStep;
 
+  /**
+   * @param reverseHorizontal whether to mirror the crop left to right; the data is left as is
+   */
   public PlanarYUVLuminanceSource(byte[] yuvData,
                                   int dataWidth,
                                   int dataHeight,
@@ -45,15 +55,31 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
                                   int width,
                                   int height,
                                   boolean reverseHorizontal) {
+    this(yuvData,
+         dataWidth,
+         dataHeight,
+         top * dataWidth + left + (reverseHorizontal ? width - 1 : 0),
+         reverseHorizontal ? -1 : 1,
+         dataWidth,
+         width,
+         height);
+  }
+
+  private PlanarYUVLuminanceSource(byte[] yuvData,
+                                   int dataWidth,
+                                   int dataHeight,
+                                   int origin,
+                                   int xStep,
+                                   int yStep,
+                                   int width,
+                                   int height) {
     super(width, height);
     this.yuvData = yuvData;
     this.dataWidth = dataWidth;
     this.dataHeight = dataHeight;
-    this.left = left;
-    this.top = top;
-    if (reverseHorizontal) {
-      reverseHorizontal(width, height);
-    }
+    this.origin = origin;
+    this.xStep = xStep;
+    this.yStep = yStep;
   }
 
   @Override
@@ -65,8 +91,14 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     if (row == null || row.length < width) {
       row = new byte[width];
     }
-    int offset = (y + top) * dataWidth + left;
-    System.arraycopy(yuvData, offset, row, 0, width);
+    int offset = origin + y * yStep;
+    if (xStep == 1) {
+      System.arraycopy(yuvData, offset, row, 0, width);
+    } else {
+      for (int x = 0; x < width; x++, offset += xStep) {
+        row[x] = yuvData[offset];
+      }
+    }
     return row;
   }
 
@@ -77,29 +109,57 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
 
     // If the caller asks for the entire underlying image, save the copy and give them the
     // original data. The docs specifically warn that result.length must be ignored.
-    if (width == dataWidth && height == dataHeight) {
+    if (isUpright() && width == dataWidth && height == dataHeight) {
       return yuvData;
     }
 
     int area = width * height;
     byte[] matrix = new byte[area];
-    int inputOffset = top * dataWidth + left;
+    int inputOffset = origin;
 
     // If the width matches the full width of the underlying data, perform a single copy.
-    if (width == dataWidth) {
+    if (isUpright() && width == dataWidth) {
       System.arraycopy(yuvData, inputOffset, matrix, 0, area);
       return matrix;
     }
 
     // Otherwise copy one cropped row at a time.
-    for (int y = 0; y < height; y++) {
+    for (int y = 0; y < height; y++, inputOffset += yStep) {
       int outputOffset = y * width;
-      System.arraycopy(yuvData, inputOffset, matrix, outputOffset, width);
-      inputOffset += dataWidth;
+      if (xStep == 1) {
+        System.arraycopy(yuvData, inputOffset, matrix, outputOffset, width);
+      } else {
+        for (int x = 0, offset = inputOffset; x < width; x++, offset += xStep) {
+          matrix[outputOffset + x] = yuvData[offset];
+        }
+      }
     }
     return matrix;
   }
 
+  private boolean isUpright() {
+    return xStep == 1 && yStep == dataWidth;
+  }
+
+  /**
+   * Hands out the camera buffer itself when rows run along the data; the crop is described by the
+   * offset and stride. Mirrored and rotated views are copied by {@link #getMatrix()}.
+   */
+  @Override
+  public byte[] getStridedMatrix() {
+    return isUpright() ? yuvData : getMatrix();
+  }
+
+  @Override
+  public int getMatrixOffset() {
+    return isUpright() ? origin : 0;
+  }
+
+  @Override
+  public int getMatrixStride() {
+    return isUpright() ? dataWidth : getWidth();
+  }
+
   @Override
   public boolean isCropSupported() {
     return true;
@@ -110,11 +170,46 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     return new PlanarYUVLuminanceSource(yuvData,
                                         dataWidth,
                                         dataHeight,
-                                        this.left + left,
-                                        this.top + top,
+                                        origin + left * xStep + top * yStep,
+                                        xStep,
+                                        yStep,
                                         width,
-                                        height,
-                                        false);
+                                        height);
+  }
+
+  @Override
+  public boolean isRotateSupported() {
+    return true;
+  }
+
+  /**
+   * @return a view of the same data, rotated by 90 degrees counterclockwise
+   */
+  @Override
+  public LuminanceSource rotateCounterClockwise() {
+    // The new pixel (x, y) is the old pixel (width - 1 - y, x)
+    return new PlanarYUVLuminanceSource(yuvData,
+                                        dataWidth,
+                                        dataHeight,
+                                        origin + (getWidth() - 1) * xStep,
+                                        yStep,
+                                        -xStep,
+                                        getHeight(),
+                                        getWidth());
+  }
+
+  /**
+   * @return a view of the same data, mirrored left to right
+   */
+  public PlanarYUVLuminanceSource reverseHorizontal() {
+    return new PlanarYUVLuminanceSource(yuvData,
+                                        dataWidth,
+                                        dataHeight,
+                                        origin + (getWidth() - 1) * xStep,
+                                        -xStep,
+                                        yStep,
+                                        getWidth(),
+                                        getHeight());
   }
 
   public int[] renderThumbnail() {
@@ -122,15 +217,16 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     int height = getHeight() / THUMBNAIL_SCALE_FACTOR;
     int[] pixels = new int[width * height];
     byte[] yuv = yuvData;
-    int inputOffset = top * dataWidth + left;
+    int inputOffset = origin;
+    int thumbnailXStep = xStep * THUMBNAIL_SCALE_FACTOR;
 
     for (int y = 0; y < height; y++) {
       int outputOffset = y * width;
-      for (int x = 0; x < width; x++) {
-        int grey = yuv[inputOffset + x * THUMBNAIL_SCALE_FACTOR] & 0xff;
+      for (int x = 0, offset = inputOffset; x < width; x++, offset += thumbnailXStep) {
+        int grey = yuv[offset] & 0xff;
         pixels[outputOffset + x] = 0xFF000000 | (grey * 0x00010101);
       }
-      inputOffset += dataWidth * THUMBNAIL_SCALE_FACTOR;
+      inputOffset += yStep * THUMBNAIL_SCALE_FACTOR;
     }
     return pixels;
   }
@@ -149,16 +245,4 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     return getHeight() / THUMBNAIL_SCALE_FACTOR;
   }
 
-  private void reverseHorizontal(int width, int height) {
-    byte[] yuvData = this.yuvData;
-    for (int y = 0, rowStart = top * dataWidth + left; y < height; y++, rowStart += dataWidth) {
-      int middle = rowStart + width / 2;
-      for (int x1 = rowStart, x2 = rowStart + width - 1; x1 < middle; x1++, x2--) {
-        byte temp = yuvData[x1];
-        yuvData[x1] = yuvData[x2];
-        yuvData[x2] = temp;
-      }
-    }
-  }
-
 }
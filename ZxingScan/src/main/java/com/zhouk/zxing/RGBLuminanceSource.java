@@ -17,15 +17,28 @@
 package com.zhouk.zxing;
 
 
+import android.annotation.TargetApi;
+
+import com.zhouk.zxing.common.RowStrips;
+
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * This class is used to help decode images from files which arrive as RGB data from
  * an ARGB pixel array. It does not support rotation.
  *
+ * For large photos, {@link #fromPixels} converts only a crop of the pixels, optionally averaging
+ * them down by 2x or 4x on the way, and from API 21 can spread the conversion over a
+ * {@link ForkJoinPool}.
+ *
  * @author dswitkin@google.com (Daniel Switkin)
  * @author Betaminos
  */
 public final class RGBLuminanceSource extends LuminanceSource {
 
+  // Below this many output rows splitting the conversion costs more than it saves
+  private static final int MIN_PARALLEL_ROWS = 256;
+
   private final byte[] luminances;
   private final int dataWidth;
   private final int dataHeight;
@@ -74,6 +87,116 @@ public final class RGBLuminanceSource extends LuminanceSource {
     this.top = top;
   }
 
+  /**
+   * Converts a crop of an ARGB image, averaging each subsample x subsample box of pixels into one
+   * luminance. Pixels are weighted as by the constructor, so with a subsample of 1 the luminances
+   * are the same as it gives for the crop. The source is width / subsample by height / subsample pixels; points found in it
+   * must be multiplied by subsample, and offset by the crop, to give image coordinates. Only the
+   * converted crop is allocated.
+   *
+   * @param pixels ARGB pixels, row by row
+   * @param dataWidth width of the image in pixels
+   * @param dataHeight height of the image in pixels
+   * @param subsample 1, 2 or 4
+   */
+  public static RGBLuminanceSource fromPixels(int[] pixels,
+                                              int dataWidth,
+                                              int dataHeight,
+                                              int left,
+                                              int top,
+                                              int width,
+                                              int height,
+                                              int subsample) {
+    checkCrop(dataWidth, dataHeight, left, top, width, height, subsample);
+    int outputWidth = width / subsample;
+    int outputHeight = height / subsample;
+    byte[] luminances = new byte[outputWidth * outputHeight];
+    convertRows(pixels, dataWidth, top * dataWidth + left, 0, outputHeight, outputWidth, subsample,
+                luminances);
+    return new RGBLuminanceSource(luminances, outputWidth, outputHeight,
+                                  0, 0, outputWidth, outputHeight);
+  }
+
+  /**
+   * As {@link #fromPixels(int[], int, int, int, int, int, int, int)}, converting large crops on a
+   * pool.
+   *
+   * @param pool pool to convert large images on, or null to stay on the calling thread; ignored
+   *  where there is no ForkJoinPool, as before API 21
+   */
+  @TargetApi(21)
+  public static RGBLuminanceSource fromPixels(final int[] pixels,
+                                              final int dataWidth,
+                                              int dataHeight,
+                                              int left,
+                                              int top,
+                                              int width,
+                                              int height,
+                                              final int subsample,
+                                              ForkJoinPool pool) {
+    checkCrop(dataWidth, dataHeight, left, top, width, height, subsample);
+    int outputHeight = height / subsample;
+    if (pool == null || outputHeight < MIN_PARALLEL_ROWS || !RowStrips.isAvailable()) {
+      return fromPixels(pixels, dataWidth, dataHeight, left, top, width, height, subsample);
+    }
+    final int outputWidth = width / subsample;
+    final byte[] luminances = new byte[outputWidth * outputHeight];
+    final int origin = top * dataWidth + left;
+    RowStrips.run(pool, outputHeight, new RowStrips.Strip() {
+      @Override
+      public void run(int start, int end) {
+        convertRows(pixels, dataWidth, origin, start, end, outputWidth, subsample, luminances);
+      }
+    });
+    return new RGBLuminanceSource(luminances, outputWidth, outputHeight,
+                                  0, 0, outputWidth, outputHeight);
+  }
+
+  private static void checkCrop(int dataWidth,
+                                int dataHeight,
+                                int left,
+                                int top,
+                                int width,
+                                int height,
+                                int subsample) {
+    if (left < 0 || top < 0 || left + width > dataWidth || top + height > dataHeight) {
+      throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+    }
+    if (subsample != 1 && subsample != 2 && subsample != 4) {
+      throw new IllegalArgumentException("subsample must be 1, 2 or 4");
+    }
+  }
+
+  /**
+   * Converts the output rows [startY, endY).
+   */
+  private static void convertRows(int[] pixels,
+                                  int dataWidth,
+                                  int origin,
+                                  int startY,
+                                  int endY,
+                                  int outputWidth,
+                                  int subsample,
+                                  byte[] luminances) {
+    // Each luminance is the sum of subsample^2 green-favouring sums r + 2g + b, shifted down by 2
+    // for the weights and by log2(subsample^2) for the average
+    int shift = 2 + 2 * Integer.numberOfTrailingZeros(subsample);
+    for (int y = startY; y < endY; y++) {
+      int rowOffset = origin + y * subsample * dataWidth;
+      int outputOffset = y * outputWidth;
+      for (int x = 0; x < outputWidth; x++) {
+        int sum = 0;
+        for (int yy = 0, offset = rowOffset + x * subsample; yy < subsample; yy++, offset += dataWidth) {
+          for (int xx = 0; xx < subsample; xx++) {
+            int pixel = pixels[offset + xx];
+            sum += ((pixel >> 16) & 0xff) + ((pixel >> 7) & 0x1fe) + (pixel & 0xff);
+          }
+        }
+        luminances[outputOffset + x] = (byte) (sum >> shift);
+      }
+    }
+  }
+
   @Override
   public byte[] getRow(int y, byte[] row) {
     if (y < 0 || y >= getHeight()) {
@@ -118,6 +241,24 @@ public final class RGBLuminanceSource extends LuminanceSource {
     return matrix;
   }
 
+  /**
+   * Hands out the luminances without copying the crop.
+   */
+  @Override
+  public byte[] getStridedMatrix() {
+    return luminances;
+  }
+
+  @Override
+  public int getMatrixOffset() {
+    return top * dataWidth + left;
+  }
+
+  @Override
+  public int getMatrixStride() {
+    return dataWidth;
+  }
+
   @Override
   public boolean isCropSupported() {
     return true;
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2008 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing;
+
+import android.graphics.Bitmap;
+
+import com.zhouk.zxing.camera.CameraManager;
+
+/**
+ * A successful decode together with the preview frame it was read from. The frame is kept as a
+ * zero-copy view of the camera's Y plane; the greyscale thumbnail is only rendered when somebody
+ * asks for it. The capture handlers ask once per result, as the host's result callbacks take a
+ * Bitmap, so only successful decodes pay for one.
+ *
+ * The preview buffer stays pinned until {@link #release()} is called, after which the luminance
+ * source must no longer be used.
+ */
+public final class ScanFrame {
+
+    private final Result rawResult;
+    private final PlanarYUVLuminanceSource source;
+    private final byte[] data;
+    private final CameraManager cameraManager;
+    private Bitmap thumbnail;
+    private boolean released;
+
+    public ScanFrame(Result rawResult, PlanarYUVLuminanceSource source, byte[] data,
+                     CameraManager cameraManager) {
+        this.rawResult = rawResult;
+        this.source = source;
+        this.data = data;
+        this.cameraManager = cameraManager;
+    }
+
+    public Result getResult() {
+        return rawResult;
+    }
+
+    /**
+     * @return the cropped Y plane the barcode was decoded from, backed by the preview buffer
+     */
+    public PlanarYUVLuminanceSource getLuminanceSource() {
+        return source;
+    }
+
+    /**
+     * @return amount by which the thumbnail is scaled relative to the luminance source
+     */
+    public float getScaleFactor() {
+        return (float) source.getThumbnailWidth() / source.getWidth();
+    }
+
+    /**
+     * @return a mutable greyscale bitmap of the decoded area, rendered on first call
+     */
+    public synchronized Bitmap getThumbnail() {
+        if (thumbnail == null && !released) {
+            int width = source.getThumbnailWidth();
+            int height = source.getThumbnailHeight();
+            thumbnail = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            thumbnail.setPixels(source.renderThumbnail(), 0, width, 0, 0, width, height);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Hands the preview buffer back to the camera. Safe to call more than once.
+     */
+    public synchronized void release() {
+        if (!released) {
+            released = true;
+            cameraManager.releasePreviewBuffer(data);
+        }
+    }
+
+}
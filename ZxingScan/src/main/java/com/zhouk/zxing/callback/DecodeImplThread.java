@@ -29,8 +29,6 @@ import java.util.concurrent.CountDownLatch;
 
 
 public final class DecodeImplThread extends Thread {
-    public static final String BARCODE_BITMAP = "barcode_bitmap";
-    public static final String BARCODE_SCALED_FACTOR = "barcode_scaled_factor";
     private final ResultCallBack callBack;
     private DecodeImplHandler handler;
     private final CountDownLatch handlerInitLatch;
@@ -17,6 +17,7 @@
 package com.zhouk.zxing.camera;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.hardware.Camera;
@@ -27,7 +28,10 @@ import android.view.SurfaceHolder;
 import com.zhouk.zxing.PlanarYUVLuminanceSource;
 import com.zhouk.zxing.camera.open.OpenCamera;
 import com.zhouk.zxing.camera.open.OpenCameraInterface;
+import com.zhouk.zxing.decode.FrameDecoder;
+import com.zhouk.zxing.decode.FrameRecorder;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
@@ -59,6 +63,9 @@ public final class CameraManager {
     private int requestedCameraId = OpenCameraInterface.NO_REQUESTED_CAMERA;
     private int requestedFramingRectWidth;
     private int requestedFramingRectHeight;
+    private boolean bufferedPreview = true;
+    private final PreviewBufferRing previewBufferRing;
+    private FrameRecorder frameRecorder;
     /**
      * Preview frames are delivered here, which we pass on to the registered handler. Make sure to
      * clear the handler so it will only receive one message.
@@ -68,7 +75,10 @@ public final class CameraManager {
     public CameraManager(Context context) {
         this.context = context;
         this.configManager = new CameraConfigurationManager(context);
-        previewCallback = new PreviewCallback(configManager);
+        // As many buffers as the decode handlers' FrameDecoder can hold at once
+        previewBufferRing = new PreviewBufferRing(
+                PreviewBufferRing.bufferCountFor(FrameDecoder.defaultWorkerCount()));
+        previewCallback = new PreviewCallback(configManager, previewBufferRing);
     }
 
 
@@ -133,6 +143,8 @@ public final class CameraManager {
      */
     public synchronized void closeDriver() {
         if (camera != null) {
+            stopRecording();
+            previewBufferRing.detach();
             camera.getCamera().release();
             camera = null;
             // Make sure to clear these each time we close the camera, so that any scanning rect
@@ -148,6 +160,9 @@ public final class CameraManager {
     public synchronized void startPreview() {
         OpenCamera theCamera = camera;
         if (theCamera != null && !previewing) {
+            if (bufferedPreview) {
+                attachPreviewBuffers(theCamera.getCamera());
+            }
             theCamera.getCamera().startPreview();
             previewing = true;
             autoFocusManager = new AutoFocusManager(context, theCamera.getCamera());
@@ -164,6 +179,10 @@ public final class CameraManager {
         }
         if (camera != null && previewing) {
             camera.getCamera().stopPreview();
+            if (previewBufferRing.isAttached()) {
+                camera.getCamera().setPreviewCallbackWithBuffer(null);
+                previewBufferRing.detach();
+            }
             previewCallback.setHandler(null, 0);
             previewing = false;
         }
@@ -200,10 +219,106 @@ public final class CameraManager {
         OpenCamera theCamera = camera;
         if (theCamera != null && previewing) {
             previewCallback.setHandler(handler, message);
-            theCamera.getCamera().setOneShotPreviewCallback(previewCallback);
+            if (!previewBufferRing.isAttached()) {
+                theCamera.getCamera().setOneShotPreviewCallback(previewCallback);
+            }
+        }
+    }
+
+    /**
+     * Chooses between re-using a small ring of preview buffers (the default) and letting the
+     * camera allocate a new buffer for every one-shot preview frame. Takes effect on the next
+     * {@link #startPreview()}.
+     */
+    public synchronized void setBufferedPreview(boolean bufferedPreview) {
+        this.bufferedPreview = bufferedPreview;
+    }
+
+    /**
+     * Hands a frame received through {@link #requestPreviewFrame(Handler, int)} back to the
+     * camera once the decoder is done with it. Does nothing in one-shot mode.
+     *
+     * @param data The preview frame, as delivered in message.obj.
+     */
+    public void releasePreviewBuffer(byte[] data) {
+        previewBufferRing.recycle(data);
+    }
+
+    /**
+     * @return number of preview frame buffers allocated so far; constant across frames once the
+     * preview is running in buffered mode
+     */
+    public long getAllocatedPreviewBuffers() {
+        return previewBufferRing.getAllocatedBuffers();
+    }
+
+    /**
+     * @return number of preview frames handed to a decode handler from the buffer ring
+     */
+    public long getDeliveredPreviewFrames() {
+        return previewBufferRing.getDeliveredFrames();
+    }
+
+    /**
+     * Starts appending every preview frame handed to the decoder through
+     * {@link #recordFrame(byte[], int, int, Rect)}, with its resolution and crop rectangle, to a
+     * capture file for offline replay with {@link com.zhouk.zxing.decode.RecordedFrameSource}.
+     *
+     * @param file The capture file; frames are appended if it already exists.
+     * @throws IOException if the file can't be opened
+     */
+    public synchronized void startRecording(File file) throws IOException {
+        stopRecording();
+        frameRecorder = new FrameRecorder(file);
+    }
+
+    /**
+     * Stops recording and flushes the capture file.
+     */
+    public synchronized void stopRecording() {
+        if (frameRecorder != null) {
+            try {
+                frameRecorder.close();
+            } catch (IOException ioe) {
+                Log.w(TAG, "Failed to write frame capture", ioe);
+            }
+            Log.i(TAG, "Recorded " + frameRecorder.getRecordedFrames() + " frames, dropped "
+                    + frameRecorder.getDroppedFrames());
+            frameRecorder = null;
         }
     }
 
+    /**
+     * Appends a frame to the capture file, if one is being recorded, with the crop it is about to
+     * be decoded with.
+     *
+     * @param data   A preview frame.
+     * @param width  The width of the frame.
+     * @param height The height of the frame.
+     * @param crop   The part of the frame handed to the decoder.
+     */
+    public synchronized void recordFrame(byte[] data, int width, int height, Rect crop) {
+        if (frameRecorder != null) {
+            frameRecorder.record(data, width, height, crop.left, crop.top, crop.width(),
+                    crop.height());
+        }
+    }
+
+    private void attachPreviewBuffers(Camera cameraObject) {
+        Point cameraResolution = configManager.getCameraResolution();
+        Camera.Parameters parameters = cameraObject.getParameters();
+        if (cameraResolution == null || parameters == null) {
+            return;
+        }
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(parameters.getPreviewFormat());
+        if (bitsPerPixel <= 0) {
+            return;
+        }
+        int frameSize = cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
+        previewBufferRing.attach(cameraObject, frameSize);
+        cameraObject.setPreviewCallbackWithBuffer(previewCallback);
+    }
+
     /**
      * Calculates the framing rect which the UI should draw to show the user where to place the
      * barcode. This target helps with alignment as well as forces the user to hold the device
@@ -311,15 +426,13 @@ public final class CameraManager {
     }
 
     /**
-     * A factory method to build the appropriate LuminanceSource object based on the format
-     * of the preview buffers, as described by Camera.Parameters.
+     * Calculates the part of a preview frame which lies under the scan box.
      *
-     * @param data   A preview frame.
      * @param width  The width of the image.
      * @param height The height of the image.
-     * @return A PlanarYUVLuminanceSource instance.
+     * @return the crop rectangle in preview frame coordinates
      */
-    public PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height,double zoomWith, double zoomheight) {
+    public Rect getCropRectInPreview(int width, int height, double zoomWith, double zoomheight) {
         //设置裁剪
         int l, r, t, b;
         int pw = (int) (width / zoomheight);
@@ -333,8 +446,22 @@ public final class CameraManager {
         if (l + r > width || t + b > height) {
             b = height - t;
         }
-        return new PlanarYUVLuminanceSource(data, width, height, l, t,
-                r, b, false);
+        return new Rect(l, t, l + r, t + b);
+    }
+
+    /**
+     * A factory method to build the appropriate LuminanceSource object based on the format
+     * of the preview buffers, as described by Camera.Parameters.
+     *
+     * @param data   A preview frame.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return A PlanarYUVLuminanceSource instance.
+     */
+    public PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height,double zoomWith, double zoomheight) {
+        Rect crop = getCropRectInPreview(width, height, zoomWith, zoomheight);
+        return new PlanarYUVLuminanceSource(data, width, height, crop.left, crop.top,
+                crop.width(), crop.height(), false);
     }
 
     public PlanarYUVLuminanceSource rebuildLuminanceSource(byte[] data, int width, int height, int l, int r, int t, int b) {
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.camera;
+
+import android.hardware.Camera;
+
+/**
+ * A fixed set of preview buffers which are handed to the camera with
+ * {@link Camera#addCallbackBuffer(byte[])} and recycled after each frame has been decoded, so
+ * that continuous scanning does not allocate a new frame per preview callback.
+ */
+@SuppressWarnings("deprecation") // camera APIs
+final class PreviewBufferRing {
+
+    /**
+     * Where the ring queues its buffers: the camera, or a stand-in for it in tests.
+     */
+    interface BufferQueue {
+        void addBuffer(byte[] buffer);
+    }
+
+    private final int bufferCount;
+    private int bufferSize;
+    private BufferQueue queue;
+    /**
+     * Number of frame buffers allocated since this ring was created. Stays at {@link #bufferCount}
+     * per preview size once scanning reaches a steady state.
+     */
+    private long allocatedBuffers;
+    private long deliveredFrames;
+
+    PreviewBufferRing(int bufferCount) {
+        this.bufferCount = bufferCount;
+    }
+
+    /**
+     * @return enough buffers for a decoder with the given number of workers: one frame being
+     * decoded per worker, since a frame is only requested while a worker is idle, one the camera
+     * is filling, and the last result's frame, pinned by its {@code ScanFrame} until released
+     */
+    static int bufferCountFor(int workerCount) {
+        return workerCount + 2;
+    }
+
+    /**
+     * Allocates the ring for the given frame size and queues every buffer with the camera. Must be
+     * called before the preview is started.
+     */
+    synchronized void attach(final Camera camera, int frameSize) {
+        camera.setPreviewCallbackWithBuffer(null);
+        attach(new BufferQueue() {
+            @Override
+            public void addBuffer(byte[] buffer) {
+                camera.addCallbackBuffer(buffer);
+            }
+        }, frameSize);
+    }
+
+    synchronized void attach(BufferQueue queue, int frameSize) {
+        this.queue = queue;
+        this.bufferSize = frameSize;
+        for (int i = 0; i < bufferCount; i++) {
+            allocatedBuffers++;
+            queue.addBuffer(new byte[frameSize]);
+        }
+    }
+
+    synchronized void detach() {
+        queue = null;
+    }
+
+    synchronized boolean isAttached() {
+        return queue != null;
+    }
+
+    synchronized void onFrameDelivered() {
+        deliveredFrames++;
+    }
+
+    /**
+     * Returns a buffer to the camera. Buffers from a previous preview size, or arriving after the
+     * camera was released, are dropped.
+     */
+    synchronized void recycle(byte[] buffer) {
+        if (queue != null && buffer != null && buffer.length == bufferSize) {
+            queue.addBuffer(buffer);
+        }
+    }
+
+    synchronized long getAllocatedBuffers() {
+        return allocatedBuffers;
+    }
+
+    synchronized long getDeliveredFrames() {
+        return deliveredFrames;
+    }
+
+}
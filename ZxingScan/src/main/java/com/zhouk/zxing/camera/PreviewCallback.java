@@ -29,11 +29,13 @@ final class PreviewCallback implements Camera.PreviewCallback {
   private static final String TAG = PreviewCallback.class.getSimpleName();
 
   private final CameraConfigurationManager configManager;
+  private final PreviewBufferRing bufferRing;
   private Handler previewHandler;
   private int previewMessage;
 
-  PreviewCallback(CameraConfigurationManager configManager) {
+  PreviewCallback(CameraConfigurationManager configManager, PreviewBufferRing bufferRing) {
     this.configManager = configManager;
+    this.bufferRing = bufferRing;
   }
 
   void setHandler(Handler previewHandler, int previewMessage) {
@@ -50,6 +52,12 @@ final class PreviewCallback implements Camera.PreviewCallback {
           cameraResolution.y, data);
       message.sendToTarget();
       previewHandler = null;
+      if (bufferRing.isAttached()) {
+        bufferRing.onFrameDelivered();
+      }
+    } else if (bufferRing.isAttached()) {
+      // Nobody is waiting for this frame; give the buffer straight back to the camera
+      bufferRing.recycle(data);
     } else {
       Log.d(TAG, "Got preview callback, but no handler or resolution available");
     }
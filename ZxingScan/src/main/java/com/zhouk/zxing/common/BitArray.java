@@ -16,21 +16,21 @@
 
 package com.zhouk.zxing.common;
 
-import java.util.Arrays;
-
 /**
- * <p>A simple, fast array of bits, represented compactly by an array of ints internally.</p>
+ * <p>A simple, fast array of bits, represented compactly by an array of longs internally, so that
+ * finding the next set or unset bit, checking ranges, xor and reversal all go 64 bits at a
+ * time.</p>
  *
  * @author Sean Owen
  */
 public final class BitArray implements Cloneable {
 
-  private int[] bits;
+  private long[] bits;
   private int size;
 
   public BitArray() {
     this.size = 0;
-    this.bits = new int[1];
+    this.bits = new long[1];
   }
 
   public BitArray(int size) {
@@ -39,7 +39,7 @@ public final class BitArray implements Cloneable {
   }
 
   // For testing only
-  BitArray(int[] bits, int size) {
+  BitArray(long[] bits, int size) {
     this.bits = bits;
     this.size = size;
   }
@@ -48,13 +48,28 @@ public final class BitArray implements Cloneable {
     return size;
   }
 
+  /**
+   * Gives this array a new size and clears it, so that it can be reused instead of allocating
+   * another. The backing array is kept if it is large enough.
+   *
+   * @param size new size in bits
+   */
+  public void reshape(int size) {
+    if (size > bits.length * 64) {
+      bits = makeArray(size);
+    } else {
+      clear();
+    }
+    this.size = size;
+  }
+
   public int getSizeInBytes() {
     return (size + 7) / 8;
   }
 
   private void ensureCapacity(int size) {
-    if (size > bits.length * 32) {
-      int[] newBits = makeArray(size);
+    if (size > bits.length * 64) {
+      long[] newBits = makeArray(size);
       System.arraycopy(bits, 0, newBits, 0, bits.length);
       this.bits = newBits;
     }
@@ -65,7 +80,7 @@ public final class BitArray implements Cloneable {
    * @return true iff bit i is set
    */
   public boolean get(int i) {
-    return (bits[i / 32] & (1 << (i & 0x1F))) != 0;
+    return (bits[i / 64] & (1L << (i & 0x3F))) != 0;
   }
 
   /**
@@ -74,7 +89,7 @@ public final class BitArray implements Cloneable {
    * @param i bit to set
    */
   public void set(int i) {
-    bits[i / 32] |= 1 << (i & 0x1F);
+    bits[i / 64] |= 1L << (i & 0x3F);
   }
 
   /**
@@ -83,7 +98,7 @@ public final class BitArray implements Cloneable {
    * @param i bit to set
    */
   public void flip(int i) {
-    bits[i / 32] ^= 1 << (i & 0x1F);
+    bits[i / 64] ^= 1L << (i & 0x3F);
   }
 
   /**
@@ -96,17 +111,17 @@ public final class BitArray implements Cloneable {
     if (from >= size) {
       return size;
     }
-    int bitsOffset = from / 32;
-    int currentBits = bits[bitsOffset];
+    int bitsOffset = from / 64;
+    long currentBits = bits[bitsOffset];
     // mask off lesser bits first
-    currentBits &= -(1 << (from & 0x1F));
+    currentBits &= -1L << (from & 0x3F);
     while (currentBits == 0) {
       if (++bitsOffset == bits.length) {
         return size;
       }
       currentBits = bits[bitsOffset];
     }
-    int result = (bitsOffset * 32) + Integer.numberOfTrailingZeros(currentBits);
+    int result = (bitsOffset * 64) + Long.numberOfTrailingZeros(currentBits);
     return Math.min(result, size);
   }
 
@@ -119,29 +134,31 @@ public final class BitArray implements Cloneable {
     if (from >= size) {
       return size;
     }
-    int bitsOffset = from / 32;
-    int currentBits = ~bits[bitsOffset];
+    int bitsOffset = from / 64;
+    long currentBits = ~bits[bitsOffset];
     // mask off lesser bits first
-    currentBits &= -(1 << (from & 0x1F));
+    currentBits &= -1L << (from & 0x3F);
     while (currentBits == 0) {
       if (++bitsOffset == bits.length) {
         return size;
       }
       currentBits = ~bits[bitsOffset];
     }
-    int result = (bitsOffset * 32) + Integer.numberOfTrailingZeros(currentBits);
+    int result = (bitsOffset * 64) + Long.numberOfTrailingZeros(currentBits);
     return Math.min(result, size);
   }
 
   /**
    * Sets a block of 32 bits, starting at bit i.
    *
-   * @param i first bit to set
+   * @param i first bit to set, a multiple of 32
    * @param newBits the new value of the next 32 bits. Note again that the least-significant bit
    * corresponds to bit i, the next-least-significant to i+1, and so on.
    */
   public void setBulk(int i, int newBits) {
-    bits[i / 32] = newBits;
+    int shift = i & 0x20;
+    int offset = i / 64;
+    bits[offset] = (bits[offset] & ~(0xFFFFFFFFL << shift)) | ((newBits & 0xFFFFFFFFL) << shift);
   }
 
   /**
@@ -158,14 +175,12 @@ public final class BitArray implements Cloneable {
       return;
     }
     end--; // will be easier to treat this as the last actually set bit -- inclusive
-    int firstInt = start / 32;
-    int lastInt = end / 32;
-    for (int i = firstInt; i <= lastInt; i++) {
-      int firstBit = i > firstInt ? 0 : start & 0x1F;
-      int lastBit = i < lastInt ? 31 : end & 0x1F;
-      // Ones from firstBit to lastBit, inclusive
-      int mask = (2 << lastBit) - (1 << firstBit);
-      bits[i] |= mask;
+    int firstLong = start / 64;
+    int lastLong = end / 64;
+    for (int i = firstLong; i <= lastLong; i++) {
+      int firstBit = i > firstLong ? 0 : start & 0x3F;
+      int lastBit = i < lastLong ? 63 : end & 0x3F;
+      bits[i] |= rangeMask(firstBit, lastBit);
     }
   }
 
@@ -196,31 +211,34 @@ public final class BitArray implements Cloneable {
       return true; // empty range matches
     }
     end--; // will be easier to treat this as the last actually set bit -- inclusive
-    int firstInt = start / 32;
-    int lastInt = end / 32;
-    for (int i = firstInt; i <= lastInt; i++) {
-      int firstBit = i > firstInt ? 0 : start & 0x1F;
-      int lastBit = i < lastInt ? 31 : end & 0x1F;
-      // Ones from firstBit to lastBit, inclusive
-      int mask = (2 << lastBit) - (1 << firstBit);
+    int firstLong = start / 64;
+    int lastLong = end / 64;
+    for (int i = firstLong; i <= lastLong; i++) {
+      int firstBit = i > firstLong ? 0 : start & 0x3F;
+      int lastBit = i < lastLong ? 63 : end & 0x3F;
+      long mask = rangeMask(firstBit, lastBit);
 
       // Return false if we're looking for 1s and the masked bits[i] isn't all 1s (that is,
       // equals the mask, or we're looking for 0s and the masked portion is not all 0s
-      if ((bits[i] & mask) != (value ? mask : 0)) {
+      if ((bits[i] & mask) != (value ? mask : 0L)) {
         return false;
       }
     }
     return true;
   }
 
+  // Ones from firstBit to lastBit, inclusive
+  private static long rangeMask(int firstBit, int lastBit) {
+    return (-1L >>> (63 - lastBit)) & (-1L << firstBit);
+  }
+
   public void appendBit(boolean bit) {
     ensureCapacity(size + 1);
     if (bit) {
-      bits[size / 32] |= 1 << (size & 0x1F);
+      bits[size / 64] |= 1L << (size & 0x3F);
     }
     size++;
   }
-
   /**
    * Appends the least-significant bits, from value, in order from most-significant to
    * least-significant. For example, appending 6 bits from 0x000001E will append the bits
@@ -251,8 +269,9 @@ public final class BitArray implements Cloneable {
     if (size != other.size) {
       throw new IllegalArgumentException("Sizes don't match");
     }
-    for (int i = 0; i < bits.length; i++) {
-      // The last int could be incomplete (i.e. not have 32 bits in
+    int max = (size + 63) / 64;
+    for (int i = 0; i < max; i++) {
+      // The last long could be incomplete (i.e. not have 64 bits in
       // it) but there is no problem since 0 XOR 0 == 0.
       bits[i] ^= other.bits[i];
     }
@@ -262,7 +281,7 @@ public final class BitArray implements Cloneable {
    *
    * @param bitOffset first bit to start writing
    * @param array array to write into. Bytes are written most-significant byte first. This is the opposite
-   *  of the internal representation, which is exposed by {@link #getBitArray()}
+   *  of the int layout returned by {@link #toIntArray()}
    * @param offset position in array to start writing
    * @param numBytes how many bytes to write
    */
@@ -280,10 +299,22 @@ public final class BitArray implements Cloneable {
   }
 
   /**
-   * @return underlying array of ints. The first element holds the first 32 bits, and the least
-   *         significant bit is bit 0.
+   * @return a copy of the bits as (size + 31) / 32 ints. The first element holds the first 32 bits,
+   *         and the least significant bit is bit 0. Changing it does not change this array.
    */
-  public int[] getBitArray() {
+  public int[] toIntArray() {
+    int[] ints = new int[(size + 31) / 32];
+    for (int i = 0; i < ints.length; i++) {
+      long word = bits[i >> 1];
+      ints[i] = (i & 0x01) == 0 ? (int) word : (int) (word >>> 32);
+    }
+    return ints;
+  }
+
+  /**
+   * @return the underlying longs, for {@link BitMatrix} to copy rows without going through ints
+   */
+  long[] getWords() {
     return bits;
   }
 
@@ -291,36 +322,31 @@ public final class BitArray implements Cloneable {
    * Reverses all bits in the array.
    */
   public void reverse() {
-    int[] newBits = new int[bits.length];
-    // reverse all int's first
-    int len = (size - 1) / 32;
+    // Works in place, so that reversing rows in a decode loop allocates nothing
+    // reverse all longs first, swapping them end for end
+    int len = (size - 1) / 64;
     int oldBitsLen = len + 1;
-    for (int i = 0; i < oldBitsLen; i++) {
-      long x = bits[i];
-      x = ((x >>  1) & 0x55555555L) | ((x & 0x55555555L) <<  1);
-      x = ((x >>  2) & 0x33333333L) | ((x & 0x33333333L) <<  2);
-      x = ((x >>  4) & 0x0f0f0f0fL) | ((x & 0x0f0f0f0fL) <<  4);
-      x = ((x >>  8) & 0x00ff00ffL) | ((x & 0x00ff00ffL) <<  8);
-      x = ((x >> 16) & 0x0000ffffL) | ((x & 0x0000ffffL) << 16);
-      newBits[len - i] = (int) x;
+    for (int i = 0, j = len; i <= j; i++, j--) {
+      long low = Long.reverse(bits[i]);
+      bits[i] = Long.reverse(bits[j]);
+      bits[j] = low;
     }
-    // now correct the int's if the bit size isn't a multiple of 32
-    if (size != oldBitsLen * 32) {
-      int leftOffset = oldBitsLen * 32 - size;
-      int currentInt = newBits[0] >>> leftOffset;
+    // now correct the longs if the bit size isn't a multiple of 64
+    if (size != oldBitsLen * 64) {
+      int leftOffset = oldBitsLen * 64 - size;
+      long currentLong = bits[0] >>> leftOffset;
       for (int i = 1; i < oldBitsLen; i++) {
-        int nextInt = newBits[i];
-        currentInt |= nextInt << (32 - leftOffset);
-        newBits[i - 1] = currentInt;
-        currentInt = nextInt >>> leftOffset;
+        long nextLong = bits[i];
+        currentLong |= nextLong << (64 - leftOffset);
+        bits[i - 1] = currentLong;
+        currentLong = nextLong >>> leftOffset;
       }
-      newBits[oldBitsLen - 1] = currentInt;
+      bits[oldBitsLen - 1] = currentLong;
     }
-    bits = newBits;
   }
 
-  private static int[] makeArray(int size) {
-    return new int[(size + 31) / 32];
+  private static long[] makeArray(int size) {
+    return new long[(size + 63) / 64];
   }
 
   @Override
@@ -329,12 +355,28 @@ public final class BitArray implements Cloneable {
       return false;
     }
     BitArray other = (BitArray) o;
-    return size == other.size && Arrays.equals(bits, other.bits);
+    if (size != other.size) {
+      return false;
+    }
+    // Reshaped arrays may have longer backing arrays than they use
+    int max = (size + 63) / 64;
+    for (int i = 0; i < max; i++) {
+      if (bits[i] != other.bits[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode() {
-    return 31 * size + Arrays.hashCode(bits);
+    int hash = 1;
+    int max = (size + 63) / 64;
+    for (int i = 0; i < max; i++) {
+      long word = bits[i];
+      hash = 31 * hash + (int) (word ^ (word >>> 32));
+    }
+    return 31 * size + hash;
   }
 
   @Override
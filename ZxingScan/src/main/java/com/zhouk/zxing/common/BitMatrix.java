@@ -24,22 +24,23 @@ import java.util.Arrays;
  * module, x is the column position, and y is the row position. The ordering is always x, y.
  * The origin is at the top-left.</p>
  *
- * <p>Internally the bits are represented in a 1-D array of 32-bit ints. However, each row begins
- * with a new int. This is done intentionally so that we can copy out a row into a BitArray very
+ * <p>Internally the bits are represented in a 1-D array of 64-bit longs. However, each row begins
+ * with a new long. This is done intentionally so that we can copy out a row into a BitArray very
  * efficiently.</p>
  *
- * <p>The ordering of bits is row-major. Within each int, the least significant bits are used first,
- * meaning they represent lower x values. This is compatible with BitArray's implementation.</p>
+ * <p>The ordering of bits is row-major. Within each long, the least significant bits are used
+ * first, meaning they represent lower x values. This is compatible with BitArray's
+ * implementation.</p>
  *
  * @author Sean Owen
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class BitMatrix implements Cloneable {
 
-  private final int width;
-  private final int height;
-  private final int rowSize;
-  private final int[] bits;
+  private int width;
+  private int height;
+  private int rowSize;
+  private long[] bits;
 
   /**
    * Creates an empty square {@code BitMatrix}.
@@ -62,17 +63,40 @@ public final class BitMatrix implements Cloneable {
     }
     this.width = width;
     this.height = height;
-    this.rowSize = (width + 31) / 32;
-    bits = new int[rowSize * height];
+    this.rowSize = (width + 63) / 64;
+    bits = new long[rowSize * height];
   }
 
-  private BitMatrix(int width, int height, int rowSize, int[] bits) {
+  private BitMatrix(int width, int height, int rowSize, long[] bits) {
     this.width = width;
     this.height = height;
     this.rowSize = rowSize;
     this.bits = bits;
   }
 
+  /**
+   * <p>Gives this matrix new dimensions and clears it, so that it can be reused instead of
+   * allocating another. The backing array is kept if it is large enough, so it may be longer than
+   * the matrix needs; only the first {@code rowSize * height} longs are ever read.</p>
+   *
+   * @param width new width
+   * @param height new height
+   */
+  public void reshape(int width, int height) {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Both dimensions must be greater than 0");
+    }
+    this.width = width;
+    this.height = height;
+    this.rowSize = (width + 63) / 64;
+    int size = rowSize * height;
+    if (bits.length < size) {
+      bits = new long[size];
+    } else {
+      Arrays.fill(bits, 0, size, 0L);
+    }
+  }
+
   /**
    * Interprets a 2D array of booleans as a {@code BitMatrix}, where "true" means an "on" bit.
    *
@@ -159,8 +183,8 @@ public final class BitMatrix implements Cloneable {
    * @return value of given bit in matrix
    */
   public boolean get(int x, int y) {
-    int offset = y * rowSize + (x / 32);
-    return ((bits[offset] >>> (x & 0x1f)) & 1) != 0;
+    int offset = y * rowSize + (x / 64);
+    return ((bits[offset] >>> (x & 0x3f)) & 1L) != 0;
   }
 
   /**
@@ -170,13 +194,41 @@ public final class BitMatrix implements Cloneable {
    * @param y The vertical component (i.e. which row)
    */
   public void set(int x, int y) {
-    int offset = y * rowSize + (x / 32);
-    bits[offset] |= 1 << (x & 0x1f);
+    int offset = y * rowSize + (x / 64);
+    bits[offset] |= 1L << (x & 0x3f);
+  }
+
+  /**
+   * <p>Sets the bits of a run of pixels in one row whose luminance is below a threshold. Bits of
+   * lighter pixels are left as they are. Each 64-bit word is built up in a local and stored once,
+   * which is much cheaper than calling {@link #set(int, int)} per pixel.</p>
+   *
+   * @param left The first column of the run
+   * @param y The row
+   * @param count The number of pixels in the run
+   * @param luminances Luminance values, one unsigned byte per pixel
+   * @param offset Index in {@code luminances} of the pixel at column {@code left}
+   * @param threshold Pixels with a luminance strictly below this are set
+   */
+  public void setBelowThreshold(int left, int y, int count, byte[] luminances, int offset, int threshold) {
+    int rowOffset = y * rowSize;
+    int x = left;
+    int end = left + count;
+    while (x < end) {
+      int wordIndex = x >>> 6;
+      int wordEnd = Math.min(end, (wordIndex + 1) << 6);
+      long word = 0L;
+      for (; x < wordEnd; x++, offset++) {
+        // The sign bit of (pixel - threshold) is set exactly when pixel < threshold
+        word |= (long) (((luminances[offset] & 0xff) - threshold) >>> 31) << (x & 0x3f);
+      }
+      bits[rowOffset + wordIndex] |= word;
+    }
   }
 
   public void unset(int x, int y) {
-    int offset = y * rowSize + (x / 32);
-    bits[offset] &= ~(1 << (x & 0x1f));
+    int offset = y * rowSize + (x / 64);
+    bits[offset] &= ~(1L << (x & 0x3f));
   }
 
   /**
@@ -186,8 +238,26 @@ public final class BitMatrix implements Cloneable {
    * @param y The vertical component (i.e. which row)
    */
   public void flip(int x, int y) {
-    int offset = y * rowSize + (x / 32);
-    bits[offset] ^= 1 << (x & 0x1f);
+    int offset = y * rowSize + (x / 64);
+    bits[offset] ^= 1L << (x & 0x3f);
+  }
+
+  /**
+   * <p>Flips every bit in the matrix, in place, a word at a time. The bits past the width in each
+   * row's last word stay clear, so flipping twice restores the matrix exactly.</p>
+   */
+  public void flip() {
+    int max = rowSize * height;
+    for (int i = 0; i < max; i++) {
+      bits[i] = ~bits[i];
+    }
+    int padding = width & 0x3f;
+    if (padding != 0) {
+      long mask = (1L << padding) - 1;
+      for (int offset = rowSize - 1; offset < max; offset += rowSize) {
+        bits[offset] &= mask;
+      }
+    }
   }
 
   /**
@@ -200,13 +270,10 @@ public final class BitMatrix implements Cloneable {
     if (width != mask.width || height != mask.height || rowSize != mask.rowSize) {
       throw new IllegalArgumentException("input matrix dimensions do not match");
     }
-    BitArray rowArray = new BitArray(width);
-    for (int y = 0; y < height; y++) {
-      int offset = y * rowSize;
-      int[] row = mask.getRow(y, rowArray).getBitArray();
-      for (int x = 0; x < rowSize; x++) {
-        bits[offset + x] ^= row[x];
-      }
+    // Both matrices lay their rows out alike, so this can go word by word
+    int max = rowSize * height;
+    for (int i = 0; i < max; i++) {
+      bits[i] ^= mask.bits[i];
     }
   }
 
@@ -214,10 +281,7 @@ public final class BitMatrix implements Cloneable {
    * Clears all bits (sets to false).
    */
   public void clear() {
-    int max = bits.length;
-    for (int i = 0; i < max; i++) {
-      bits[i] = 0;
-    }
+    Arrays.fill(bits, 0, rowSize * height, 0L);
   }
 
   /**
@@ -243,7 +307,7 @@ public final class BitMatrix implements Cloneable {
     for (int y = top; y < bottom; y++) {
       int offset = y * rowSize;
       for (int x = left; x < right; x++) {
-        bits[offset + (x / 32)] |= 1 << (x & 0x1f);
+        bits[offset + (x / 64)] |= 1L << (x & 0x3f);
       }
     }
   }
@@ -262,18 +326,46 @@ public final class BitMatrix implements Cloneable {
     } else {
       row.clear();
     }
+    System.arraycopy(bits, y * rowSize, row.getWords(), 0, rowSize);
+    return row;
+  }
+
+  /**
+   * <p>Run-length encodes one row, a 64-bit word at a time: fills {@code boundaries} with every x
+   * whose bit differs from the bit before it, reading the row as if a white pixel preceded it.
+   * The runs therefore alternate white, black, white and so on, the first being a white run that
+   * is empty when the row starts black, and the last ending at the width. Matching patterns over
+   * these takes one step per run instead of one per pixel.</p>
+   *
+   * @param y The row to encode
+   * @param boundaries array of at least width entries to fill
+   * @return the number of boundaries
+   */
+  public int getRowBoundaries(int y, int[] boundaries) {
     int offset = y * rowSize;
-    for (int x = 0; x < rowSize; x++) {
-      row.setBulk(x * 32, bits[offset + x]);
+    int count = 0;
+    long previous = 0L;
+    for (int x64 = 0; x64 < rowSize; x64++) {
+      long word = bits[offset + x64];
+      long changes = word ^ ((word << 1) | previous);
+      previous = word >>> 63;
+      if (x64 == rowSize - 1 && (width & 0x3f) != 0) {
+        // The padding past the width is clear; a black last pixel does not end a run in the row
+        changes &= (1L << (width & 0x3f)) - 1;
+      }
+      while (changes != 0) {
+        boundaries[count++] = x64 * 64 + Long.numberOfTrailingZeros(changes);
+        changes &= changes - 1;
+      }
     }
-    return row;
+    return count;
   }
 
   /**
    * @param y row to set
    */
   public void setRow(int y, BitArray row) {
-    System.arraycopy(row.getBitArray(), 0, bits, y * rowSize, rowSize);
+    System.arraycopy(row.getWords(), 0, bits, y * rowSize, rowSize);
   }
 
   /**
@@ -306,8 +398,8 @@ public final class BitMatrix implements Cloneable {
     int bottom = -1;
 
     for (int y = 0; y < height; y++) {
-      for (int x32 = 0; x32 < rowSize; x32++) {
-        int theBits = bits[y * rowSize + x32];
+      for (int x64 = 0; x64 < rowSize; x64++) {
+        long theBits = bits[y * rowSize + x64];
         if (theBits != 0) {
           if (y < top) {
             top = y;
@@ -315,23 +407,13 @@ public final class BitMatrix implements Cloneable {
           if (y > bottom) {
             bottom = y;
           }
-          if (x32 * 32 < left) {
-            int bit = 0;
-            while ((theBits << (31 - bit)) == 0) {
-              bit++;
-            }
-            if ((x32 * 32 + bit) < left) {
-              left = x32 * 32 + bit;
-            }
+          int first = x64 * 64 + Long.numberOfTrailingZeros(theBits);
+          if (first < left) {
+            left = first;
           }
-          if (x32 * 32 + 31 > right) {
-            int bit = 31;
-            while ((theBits >>> bit) == 0) {
-              bit--;
-            }
-            if ((x32 * 32 + bit) > right) {
-              right = x32 * 32 + bit;
-            }
+          int last = x64 * 64 + 63 - Long.numberOfLeadingZeros(theBits);
+          if (last > right) {
+            right = last;
           }
         }
       }
@@ -350,27 +432,21 @@ public final class BitMatrix implements Cloneable {
    * @return {@code x,y} coordinate of top-left-most 1 bit, or null if it is all white
    */
   public int[] getTopLeftOnBit() {
+    int max = rowSize * height;
     int bitsOffset = 0;
-    while (bitsOffset < bits.length && bits[bitsOffset] == 0) {
+    while (bitsOffset < max && bits[bitsOffset] == 0) {
       bitsOffset++;
     }
-    if (bitsOffset == bits.length) {
+    if (bitsOffset == max) {
       return null;
     }
     int y = bitsOffset / rowSize;
-    int x = (bitsOffset % rowSize) * 32;
-
-    int theBits = bits[bitsOffset];
-    int bit = 0;
-    while ((theBits << (31 - bit)) == 0) {
-      bit++;
-    }
-    x += bit;
+    int x = (bitsOffset % rowSize) * 64 + Long.numberOfTrailingZeros(bits[bitsOffset]);
     return new int[] {x, y};
   }
 
   public int[] getBottomRightOnBit() {
-    int bitsOffset = bits.length - 1;
+    int bitsOffset = rowSize * height - 1;
     while (bitsOffset >= 0 && bits[bitsOffset] == 0) {
       bitsOffset--;
     }
@@ -379,14 +455,7 @@ public final class BitMatrix implements Cloneable {
     }
 
     int y = bitsOffset / rowSize;
-    int x = (bitsOffset % rowSize) * 32;
-
-    int theBits = bits[bitsOffset];
-    int bit = 31;
-    while ((theBits >>> bit) == 0) {
-      bit--;
-    }
-    x += bit;
+    int x = (bitsOffset % rowSize) * 64 + 63 - Long.numberOfLeadingZeros(bits[bitsOffset]);
 
     return new int[] {x, y};
   }
@@ -406,10 +475,10 @@ public final class BitMatrix implements Cloneable {
   }
 
   /**
-   * @return The row size of the matrix
+   * @return The row size of the matrix, in the 32-bit words of {@link BitArray#toIntArray()}
    */
   public int getRowSize() {
-    return rowSize;
+    return (width + 31) / 32;
   }
 
   @Override
@@ -418,8 +487,17 @@ public final class BitMatrix implements Cloneable {
       return false;
     }
     BitMatrix other = (BitMatrix) o;
-    return width == other.width && height == other.height && rowSize == other.rowSize &&
-    Arrays.equals(bits, other.bits);
+    if (width != other.width || height != other.height || rowSize != other.rowSize) {
+      return false;
+    }
+    // Reshaped matrices may have longer arrays than they use
+    int max = rowSize * height;
+    for (int i = 0; i < max; i++) {
+      if (bits[i] != other.bits[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
@@ -428,7 +506,13 @@ public final class BitMatrix implements Cloneable {
     hash = 31 * hash + width;
     hash = 31 * hash + height;
     hash = 31 * hash + rowSize;
-     hash = 31 * hash + Arrays.hashCode(bits);
+    int bitsHash = 1;
+    int max = rowSize * height;
+    for (int i = 0; i < max; i++) {
+      long word = bits[i];
+      bitsHash = 31 * bitsHash + (int) (word ^ (word >>> 32));
+    }
+    hash = 31 * hash + bitsHash;
     return hash;
   }
 
@@ -474,7 +558,7 @@ public final class BitMatrix implements Cloneable {
 
   @Override
   public BitMatrix clone() {
-    return new BitMatrix(width, height, rowSize, bits.clone());
+    return new BitMatrix(width, height, rowSize, Arrays.copyOf(bits, rowSize * height));
   }
 
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2007 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.common;
+
+
+import java.util.ArrayDeque;
+
+/**
+ * A small per-thread pool of {@link BitMatrix} and {@link BitArray} instances, so that decoding
+ * preview frame after preview frame reuses the same few bit arrays instead of allocating a
+ * binarized frame, a sampled grid and 1D rows every time.
+ *
+ * Whatever is acquired comes back cleared and of the requested size, reshaped from a released
+ * instance when there is one. Releasing is optional: an instance that is never released is simply
+ * collected. An instance must not be used after it is released, nor released twice while it is
+ * pooled. Each thread keeps at most {@link #MAX_POOLED} instances of each kind; an instance
+ * released on another thread than it was acquired on joins that thread's pool.
+ */
+public final class BitPool {
+
+  public static final int MAX_POOLED = 4;
+
+  private static final ThreadLocal<BitPool> POOL = new ThreadLocal<BitPool>() {
+    @Override
+    protected BitPool initialValue() {
+      return new BitPool();
+    }
+  };
+
+  private final ArrayDeque<BitMatrix> matrices = new ArrayDeque<>(MAX_POOLED);
+  private final ArrayDeque<BitArray> arrays = new ArrayDeque<>(MAX_POOLED);
+
+  private BitPool() {
+  }
+
+  /**
+   * @return a cleared matrix of the given size, from this thread's pool if it has one
+   */
+  public static BitMatrix acquireMatrix(int width, int height) {
+    BitMatrix matrix = POOL.get().matrices.pollFirst();
+    if (matrix == null) {
+      return new BitMatrix(width, height);
+    }
+    matrix.reshape(width, height);
+    return matrix;
+  }
+
+  /**
+   * Hands a matrix back to this thread's pool, or drops it if the pool is full.
+   *
+   * @param matrix matrix no longer used by anyone, or null
+   */
+  public static void release(BitMatrix matrix) {
+    if (matrix == null) {
+      return;
+    }
+    ArrayDeque<BitMatrix> matrices = POOL.get().matrices;
+    if (matrices.size() < MAX_POOLED && !containsInstance(matrices, matrix)) {
+      matrices.addFirst(matrix);
+    }
+  }
+
+  /**
+   * @return a cleared array of the given size, from this thread's pool if it has one
+   */
+  public static BitArray acquireArray(int size) {
+    BitArray array = POOL.get().arrays.pollFirst();
+    if (array == null) {
+      return new BitArray(size);
+    }
+    array.reshape(size);
+    return array;
+  }
+
+  /**
+   * Hands an array back to this thread's pool, or drops it if the pool is full.
+   *
+   * @param array array no longer used by anyone, or null
+   */
+  public static void release(BitArray array) {
+    if (array == null) {
+      return;
+    }
+    ArrayDeque<BitArray> arrays = POOL.get().arrays;
+    if (arrays.size() < MAX_POOLED && !containsInstance(arrays, array)) {
+      arrays.addFirst(array);
+    }
+  }
+
+  // equals() would compare bits, and two equal matrices may well both be pooled
+  private static boolean containsInstance(ArrayDeque<?> pooled, Object instance) {
+    for (Object candidate : pooled) {
+      if (candidate == instance) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.common;
+
+
+import com.zhouk.zxing.NotFoundException;
+
+/**
+ * Carries the {@link GlobalHistogramBinarizer}'s black point estimate from one preview frame to
+ * the next, so that a frame whose own histogram is too flat or noisy to show two peaks is still
+ * thresholded instead of being thrown away.
+ *
+ * Every frame's histogram, normalized to its sample count, is folded into an exponentially
+ * smoothed histogram, and every black point found into a smoothed black point. A frame with a
+ * usable histogram of its own keeps its own black point. A frame without one is thresholded at the
+ * black point of the smoothed histogram, or failing that at the smoothed black point, as long as
+ * some frame in the last {@link #getMaxStaleFrames()} produced an estimate. After that the frames
+ * fail as before, so a camera pointed at a blank surface keeps failing quickly.
+ *
+ * One instance belongs to one scanning session and may be shared by the threads decoding it.
+ */
+public final class BlackPointSmoother {
+
+  public static final double DEFAULT_ALPHA = 0.3;
+  public static final int DEFAULT_MAX_STALE_FRAMES = 15;
+
+  // Fixed point scale of the smoothed histogram when it is handed to the estimator; small enough
+  // that the estimator's scores cannot overflow
+  private static final int HISTOGRAM_SCALE = 1 << 12;
+
+  private final double alpha;
+  private final int maxStaleFrames;
+  private final double[] histogram = new double[GlobalHistogramBinarizer.LUMINANCE_BUCKETS];
+  private final int[] smoothedBuckets = new int[GlobalHistogramBinarizer.LUMINANCE_BUCKETS];
+  private boolean primed;
+  private double blackPoint = -1.0;
+  private int staleFrames;
+  private long rescued;
+
+  public BlackPointSmoother() {
+    this(DEFAULT_ALPHA, DEFAULT_MAX_STALE_FRAMES);
+  }
+
+  /**
+   * @param alpha weight of the newest frame in the smoothed histogram and black point
+   * @param maxStaleFrames how many frames in a row may borrow the smoothed estimate
+   */
+  public BlackPointSmoother(double alpha, int maxStaleFrames) {
+    if (alpha <= 0.0 || alpha > 1.0) {
+      throw new IllegalArgumentException("alpha must be above 0 and at most 1");
+    }
+    if (maxStaleFrames < 0) {
+      throw new IllegalArgumentException("maxStaleFrames must not be negative");
+    }
+    this.alpha = alpha;
+    this.maxStaleFrames = maxStaleFrames;
+  }
+
+  public int getMaxStaleFrames() {
+    return maxStaleFrames;
+  }
+
+  /**
+   * Folds a frame's histogram into the history and picks the frame's black point.
+   *
+   * @param buckets the frame's luminance histogram, as sampled by {@link GlobalHistogramBinarizer}
+   * @return the black point to threshold the frame at
+   * @throws NotFoundException if neither the frame nor recent history give a black point
+   */
+  synchronized int update(int[] buckets) throws NotFoundException {
+    int total = 0;
+    for (int count : buckets) {
+      total += count;
+    }
+    if (total > 0) {
+      for (int x = 0; x < histogram.length; x++) {
+        double share = (double) buckets[x] / total;
+        histogram[x] = primed ? histogram[x] + alpha * (share - histogram[x]) : share;
+      }
+      primed = true;
+    }
+
+    int frameBlackPoint;
+    try {
+      frameBlackPoint = GlobalHistogramBinarizer.estimateBlackPoint(buckets);
+    } catch (NotFoundException nfe) {
+      frameBlackPoint = -1;
+    }
+    if (frameBlackPoint >= 0) {
+      smooth(frameBlackPoint);
+      return frameBlackPoint;
+    }
+
+    // The frame alone is too flat; borrow from the frames before it
+    if (blackPoint < 0.0 || staleFrames >= maxStaleFrames) {
+      throw NotFoundException.getNotFoundInstance();
+    }
+    staleFrames++;
+    rescued++;
+    if (primed) {
+      for (int x = 0; x < histogram.length; x++) {
+        smoothedBuckets[x] = (int) (histogram[x] * HISTOGRAM_SCALE);
+      }
+      try {
+        return GlobalHistogramBinarizer.estimateBlackPoint(smoothedBuckets);
+      } catch (NotFoundException nfe) {
+        // fall through to the smoothed black point
+      }
+    }
+    return (int) Math.round(blackPoint);
+  }
+
+  private void smooth(int frameBlackPoint) {
+    blackPoint = blackPoint < 0.0 ? frameBlackPoint : blackPoint + alpha * (frameBlackPoint - blackPoint);
+    staleFrames = 0;
+  }
+
+  /**
+   * @return the smoothed black point, or -1 if no frame has produced one yet
+   */
+  public synchronized int getBlackPoint() {
+    return blackPoint < 0.0 ? -1 : (int) Math.round(blackPoint);
+  }
+
+  /**
+   * @return the number of frames thresholded with a borrowed black point
+   */
+  public synchronized long getRescuedFrames() {
+    return rescued;
+  }
+
+  /**
+   * Forgets the history, for a new scanning session.
+   */
+  public synchronized void reset() {
+    for (int x = 0; x < histogram.length; x++) {
+      histogram[x] = 0.0;
+    }
+    primed = false;
+    blackPoint = -1.0;
+    staleFrames = 0;
+  }
+
+}
@@ -17,10 +17,14 @@
 package com.zhouk.zxing.common;
 
 
+import android.annotation.TargetApi;
+
 import com.zhouk.zxing.Binarizer;
 import com.zhouk.zxing.LuminanceSource;
 import com.zhouk.zxing.NotFoundException;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * This Binarizer implementation uses the old ZXing global histogram approach. It is suitable
  * for low-end mobile devices which don't have enough CPU or memory to use a local thresholding
@@ -29,6 +33,13 @@ import com.zhouk.zxing.NotFoundException;
  *
  * Faster mobile devices and all desktop applications should probably use HybridBinarizer instead.
  *
+ * Given a {@link ForkJoinPool}, large images are thresholded in horizontal strips in parallel.
+ * The output is identical to the serial path.
+ *
+ * Given a {@link BlackPointSmoother}, the 2D black point is tracked across the frames of a
+ * scanning session, and a frame whose histogram is too flat to estimate one borrows it from the
+ * frames before it instead of failing.
+ *
  * @author dswitkin@google.com (Daniel Switkin)
  * @author Sean Owen
  */
@@ -36,16 +47,55 @@ public class GlobalHistogramBinarizer extends Binarizer {
 
   private static final int LUMINANCE_BITS = 5;
   private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
-  private static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
+  static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
   private static final byte[] EMPTY = new byte[0];
+  // Below this many rows splitting the work costs more than it saves
+  static final int MIN_PARALLEL_ROWS = 512;
 
   private byte[] luminances;
   private final int[] buckets;
+  private final ForkJoinPool pool;
+  private final BlackPointSmoother smoother;
 
   public GlobalHistogramBinarizer(LuminanceSource source) {
+    this(source, null);
+  }
+
+  /**
+   * @param pool pool to binarize large images on, or null to stay on the calling thread; ignored
+   *  where there is no ForkJoinPool, as before API 21
+   */
+  @TargetApi(21)
+  public GlobalHistogramBinarizer(LuminanceSource source, ForkJoinPool pool) {
+    this(source, pool, null);
+  }
+
+  /**
+   * @param pool pool to binarize large images on, or null to stay on the calling thread; ignored
+   *  where there is no ForkJoinPool, as before API 21
+   * @param smoother black point history of the scanning session, or null to treat every frame
+   *  on its own
+   */
+  @TargetApi(21)
+  public GlobalHistogramBinarizer(LuminanceSource source, ForkJoinPool pool,
+                                  BlackPointSmoother smoother) {
     super(source);
     luminances = EMPTY;
     buckets = new int[LUMINANCE_BUCKETS];
+    this.pool = pool;
+    this.smoother = smoother;
+  }
+
+  protected final ForkJoinPool getPool() {
+    return pool;
+  }
+
+  /**
+   * @return whether to split this many rows of work over the pool: there is one, the runtime has
+   *  ForkJoinPool, and there are enough rows to pay for it
+   */
+  protected final boolean isParallel(int rows) {
+    return pool != null && rows >= MIN_PARALLEL_ROWS && RowStrips.isAvailable();
   }
 
   // Applies simple sharpening to the row data to improve performance of the 1D Readers.
@@ -94,9 +144,8 @@ public class GlobalHistogramBinarizer extends Binarizer {
   @Override
   public BitMatrix getBlackMatrix() throws NotFoundException {
     LuminanceSource source = getLuminanceSource();
-    int width = source.getWidth();
+    final int width = source.getWidth();
     int height = source.getHeight();
-    BitMatrix matrix = new BitMatrix(width, height);
 
     // Quickly calculates the histogram by sampling four rows from the image. This proved to be
     // more robust on the blackbox tests than sampling a diagonal as we used to do.
@@ -111,19 +160,28 @@ public class GlobalHistogramBinarizer extends Binarizer {
         localBuckets[pixel >> LUMINANCE_SHIFT]++;
       }
     }
-    int blackPoint = estimateBlackPoint(localBuckets);
+    final int blackPoint = smoother != null
+        ? smoother.update(localBuckets) : estimateBlackPoint(localBuckets);
 
     // We delay reading the entire image luminance until the black point estimation succeeds.
     // Although we end up reading four rows twice, it is consistent with our motto of
     // "fail quickly" which is necessary for continuous scanning.
-    byte[] localLuminances = source.getMatrix();
-    for (int y = 0; y < height; y++) {
-      int offset = y * width;
-      for (int x = 0; x < width; x++) {
-        int pixel = localLuminances[offset + x] & 0xff;
-        if (pixel < blackPoint) {
-          matrix.set(x, y);
+    final byte[] localLuminances = source.getStridedMatrix();
+    final int matrixOffset = source.getMatrixOffset();
+    final int stride = source.getMatrixStride();
+    final BitMatrix matrix = BitPool.acquireMatrix(width, height);
+    if (isParallel(height)) {
+      RowStrips.run(pool, height, new RowStrips.Strip() {
+        @Override
+        public void run(int start, int end) {
+          for (int y = start; y < end; y++) {
+            matrix.setBelowThreshold(0, y, width, localLuminances, matrixOffset + y * stride, blackPoint);
+          }
         }
+      });
+    } else {
+      for (int y = 0; y < height; y++) {
+        matrix.setBelowThreshold(0, y, width, localLuminances, matrixOffset + y * stride, blackPoint);
       }
     }
 
@@ -132,7 +190,7 @@ public class GlobalHistogramBinarizer extends Binarizer {
 
   @Override
   public Binarizer createBinarizer(LuminanceSource source) {
-    return new GlobalHistogramBinarizer(source);
+    return new GlobalHistogramBinarizer(source, pool, smoother);
   }
 
   private void initArrays(int luminanceSize) {
@@ -144,7 +202,7 @@ public class GlobalHistogramBinarizer extends Binarizer {
     }
   }
 
-  private static int estimateBlackPoint(int[] buckets) throws NotFoundException {
+  static int estimateBlackPoint(int[] buckets) throws NotFoundException {
     // Find the tallest peak in the histogram.
     int numBuckets = buckets.length;
     int maxBucketCount = 0;
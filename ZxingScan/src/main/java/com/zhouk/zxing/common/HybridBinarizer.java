@@ -17,10 +17,14 @@
 package com.zhouk.zxing.common;
 
 
+import android.annotation.TargetApi;
+
 import com.zhouk.zxing.Binarizer;
 import com.zhouk.zxing.LuminanceSource;
 import com.zhouk.zxing.NotFoundException;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * This class implements a local thresholding algorithm, which while slower than the
  * GlobalHistogramBinarizer, is fairly efficient for what it does. It is designed for
@@ -36,16 +40,20 @@ import com.zhouk.zxing.NotFoundException;
  *
  * This Binarizer is the default for the unit tests and the recommended class for library users.
  *
+ * Given a {@link ForkJoinPool}, large images are binarized in horizontal strips in parallel: block
+ * statistics and thresholding run per strip, and only the fix-up of low contrast blocks, which
+ * depends on the blocks before it, runs serially. The output is identical to the serial path.
+ *
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class HybridBinarizer extends GlobalHistogramBinarizer {
 
   // This class uses 5x5 blocks to compute local luminance, where each block is 8x8 pixels.
   // So this is the smallest dimension in each axis we can accept.
-  private static final int BLOCK_SIZE_POWER = 3;
-  private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER; // ...0100...00
-  private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;   // ...0011...11
-  private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+  static final int BLOCK_SIZE_POWER = 3;
+  static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER; // ...0100...00
+  static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;   // ...0011...11
+  static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
   private static final int MIN_DYNAMIC_RANGE = 24;
 
   private BitMatrix matrix;
@@ -54,6 +62,15 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
     super(source);
   }
 
+  /**
+   * @param pool pool to binarize large images on, or null to stay on the calling thread; ignored
+   *  where there is no ForkJoinPool, as before API 21
+   */
+  @TargetApi(21)
+  public HybridBinarizer(LuminanceSource source, ForkJoinPool pool) {
+    super(source, pool);
+  }
+
   /**
    * Calculates the final BitMatrix once for all requests. This could be called once from the
    * constructor instead, but there are some advantages to doing it lazily, such as making
@@ -68,7 +85,9 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
     int width = source.getWidth();
     int height = source.getHeight();
     if (width >= MINIMUM_DIMENSION && height >= MINIMUM_DIMENSION) {
-      byte[] luminances = source.getMatrix();
+      byte[] luminances = source.getStridedMatrix();
+      int matrixOffset = source.getMatrixOffset();
+      int stride = source.getMatrixStride();
       int subWidth = width >> BLOCK_SIZE_POWER;
       if ((width & BLOCK_SIZE_MASK) != 0) {
         subWidth++;
@@ -77,11 +96,16 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
       if ((height & BLOCK_SIZE_MASK) != 0) {
         subHeight++;
       }
-      int[][] blackPoints = calculateBlackPoints(luminances, subWidth, subHeight, width, height);
+      if (isParallel(height)) {
+        matrix = binarizeInStrips(getPool(), luminances, matrixOffset, stride, subWidth, subHeight, width, height);
+      } else {
+        int[][] blackPoints = new int[subHeight][subWidth];
+        calculateBlackPoints(luminances, matrixOffset, stride, subWidth, subHeight, width, height, blackPoints);
 
-      BitMatrix newMatrix = new BitMatrix(width, height);
-      calculateThresholdForBlock(luminances, subWidth, subHeight, width, height, blackPoints, newMatrix);
-      matrix = newMatrix;
+        BitMatrix newMatrix = BitPool.acquireMatrix(width, height);
+        calculateThresholdForBlock(luminances, matrixOffset, stride, subWidth, subHeight, width, height, blackPoints, newMatrix);
+        matrix = newMatrix;
+      }
     } else {
       // If the image is too small, fall back to the global histogram approach.
       matrix = super.getBlackMatrix();
@@ -91,7 +115,42 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
 
   @Override
   public Binarizer createBinarizer(LuminanceSource source) {
-    return new HybridBinarizer(source);
+    return new HybridBinarizer(source, getPool());
+  }
+
+  @TargetApi(21)
+  private static BitMatrix binarizeInStrips(ForkJoinPool pool,
+                                            final byte[] luminances,
+                                            final int matrixOffset,
+                                            final int stride,
+                                            final int subWidth,
+                                            final int subHeight,
+                                            final int width,
+                                            final int height) {
+    final int[][] blackPoints = new int[subHeight][subWidth];
+    // Minimum of each low contrast block, -1 for blocks with enough contrast
+    final int[][] lowContrastMins = new int[subHeight][subWidth];
+    RowStrips.run(pool, subHeight, new RowStrips.Strip() {
+      @Override
+      public void run(int start, int end) {
+        calculateBlockStatistics(luminances, matrixOffset, stride, start, end, subWidth, width, height, blackPoints, lowContrastMins);
+      }
+    });
+    correctLowContrastBlocks(subWidth, subHeight, blackPoints, lowContrastMins);
+
+    final BitMatrix newMatrix = BitPool.acquireMatrix(width, height);
+    // The last block row is moved up to fit and overlaps the one before it, so those two have to
+    // be thresholded by the same strip
+    RowStrips.run(pool, subHeight - 1, new RowStrips.Strip() {
+      @Override
+      public void run(int start, int end) {
+        if (end == subHeight - 1) {
+          end = subHeight;
+        }
+        thresholdBlockRows(luminances, matrixOffset, stride, start, end, subWidth, subHeight, width, height, blackPoints, newMatrix);
+      }
+    });
+    return newMatrix;
   }
 
   /**
@@ -100,15 +159,31 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
    * on the last pixels in the row/column which are also used in the previous block).
    */
   private static void calculateThresholdForBlock(byte[] luminances,
+                                                 int matrixOffset,
+                                                 int stride,
                                                  int subWidth,
                                                  int subHeight,
                                                  int width,
                                                  int height,
                                                  int[][] blackPoints,
                                                 BitMatrix matrix) {
+    thresholdBlockRows(luminances, matrixOffset, stride, 0, subHeight, subWidth, subHeight, width, height, blackPoints, matrix);
+  }
+
+  private static void thresholdBlockRows(byte[] luminances,
+                                         int matrixOffset,
+                                         int stride,
+                                         int startY,
+                                         int endY,
+                                         int subWidth,
+                                         int subHeight,
+                                         int width,
+                                         int height,
+                                         int[][] blackPoints,
+                                         BitMatrix matrix) {
     int maxYOffset = height - BLOCK_SIZE;
     int maxXOffset = width - BLOCK_SIZE;
-    for (int y = 0; y < subHeight; y++) {
+    for (int y = startY; y < endY; y++) {
       int yoffset = y << BLOCK_SIZE_POWER;
       if (yoffset > maxYOffset) {
         yoffset = maxYOffset;
@@ -126,31 +201,28 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
           sum += blackRow[left - 2] + blackRow[left - 1] + blackRow[left] + blackRow[left + 1] + blackRow[left + 2];
         }
         int average = sum / 25;
-        thresholdBlock(luminances, xoffset, yoffset, average, width, matrix);
+        thresholdBlock(luminances, matrixOffset, stride, xoffset, yoffset, average, matrix);
       }
     }
   }
 
-  private static int cap(int value, int max) {
+  static int cap(int value, int max) {
     return value < 2 ? 2 : Math.min(value, max);
   }
 
   /**
    * Applies a single threshold to a block of pixels.
    */
-  private static void thresholdBlock(byte[] luminances,
-                                     int xoffset,
-                                     int yoffset,
-                                     int threshold,
-                                     int stride,
-                                     BitMatrix matrix) {
-    for (int y = 0, offset = yoffset * stride + xoffset; y < BLOCK_SIZE; y++, offset += stride) {
-      for (int x = 0; x < BLOCK_SIZE; x++) {
-        // Comparison needs to be <= so that black == 0 pixels are black even if the threshold is 0.
-        if ((luminances[offset + x] & 0xFF) <= threshold) {
-          matrix.set(xoffset + x, yoffset + y);
-        }
-      }
+  static void thresholdBlock(byte[] luminances,
+                             int matrixOffset,
+                             int stride,
+                             int xoffset,
+                             int yoffset,
+                             int threshold,
+                             BitMatrix matrix) {
+    for (int y = 0, offset = matrixOffset + yoffset * stride + xoffset; y < BLOCK_SIZE; y++, offset += stride) {
+      // Comparison needs to be <= so that black == 0 pixels are black even if the threshold is 0.
+      matrix.setBelowThreshold(xoffset, yoffset + y, BLOCK_SIZE, luminances, offset, threshold + 1);
     }
   }
 
@@ -158,15 +230,19 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
    * Calculates a single black point for each block of pixels and saves it away.
    * See the following thread for a discussion of this algorithm:
    *  http://groups.google.com/group/zxing/browse_thread/thread/d06efa2c35a7ddc0
+   *
+   * @param blackPoints at least subHeight rows of at least subWidth entries to fill
    */
-  private static int[][] calculateBlackPoints(byte[] luminances,
-                                              int subWidth,
-                                              int subHeight,
-                                              int width,
-                                              int height) {
+  static void calculateBlackPoints(byte[] luminances,
+                                   int matrixOffset,
+                                   int stride,
+                                   int subWidth,
+                                   int subHeight,
+                                   int width,
+                                   int height,
+                                   int[][] blackPoints) {
     int maxYOffset = height - BLOCK_SIZE;
     int maxXOffset = width - BLOCK_SIZE;
-    int[][] blackPoints = new int[subHeight][subWidth];
     for (int y = 0; y < subHeight; y++) {
       int yoffset = y << BLOCK_SIZE_POWER;
       if (yoffset > maxYOffset) {
@@ -180,7 +256,7 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
         int sum = 0;
         int min = 0xFF;
         int max = 0;
-        for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+        for (int yy = 0, offset = matrixOffset + yoffset * stride + xoffset; yy < BLOCK_SIZE; yy++, offset += stride) {
           for (int xx = 0; xx < BLOCK_SIZE; xx++) {
             int pixel = luminances[offset + xx] & 0xFF;
             sum += pixel;
@@ -195,7 +271,7 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
           // short-circuit min/max tests once dynamic range is met
           if (max - min > MIN_DYNAMIC_RANGE) {
             // finish the rest of the rows quickly
-            for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+            for (yy++, offset += stride; yy < BLOCK_SIZE; yy++, offset += stride) {
               for (int xx = 0; xx < BLOCK_SIZE; xx++) {
                 sum += luminances[offset + xx] & 0xFF;
               }
@@ -232,7 +308,81 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
         blackPoints[y][x] = average;
       }
     }
-    return blackPoints;
+  }
+
+  /**
+   * The part of {@link #calculateBlackPoints} which only depends on each block's own pixels, for
+   * the block rows [startY, endY): the average of blocks with enough contrast, or half the minimum
+   * of low contrast blocks whose minimum is kept for {@link #correctLowContrastBlocks}.
+   */
+  private static void calculateBlockStatistics(byte[] luminances,
+                                               int matrixOffset,
+                                               int stride,
+                                               int startY,
+                                               int endY,
+                                               int subWidth,
+                                               int width,
+                                               int height,
+                                               int[][] blackPoints,
+                                               int[][] lowContrastMins) {
+    int maxYOffset = height - BLOCK_SIZE;
+    int maxXOffset = width - BLOCK_SIZE;
+    for (int y = startY; y < endY; y++) {
+      int yoffset = y << BLOCK_SIZE_POWER;
+      if (yoffset > maxYOffset) {
+        yoffset = maxYOffset;
+      }
+      for (int x = 0; x < subWidth; x++) {
+        int xoffset = x << BLOCK_SIZE_POWER;
+        if (xoffset > maxXOffset) {
+          xoffset = maxXOffset;
+        }
+        int sum = 0;
+        int min = 0xFF;
+        int max = 0;
+        for (int yy = 0, offset = matrixOffset + yoffset * stride + xoffset; yy < BLOCK_SIZE; yy++, offset += stride) {
+          for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+            int pixel = luminances[offset + xx] & 0xFF;
+            sum += pixel;
+            if (pixel < min) {
+              min = pixel;
+            }
+            if (pixel > max) {
+              max = pixel;
+            }
+          }
+        }
+        if (max - min > MIN_DYNAMIC_RANGE) {
+          blackPoints[y][x] = sum >> (BLOCK_SIZE_POWER * 2);
+          lowContrastMins[y][x] = -1;
+        } else {
+          blackPoints[y][x] = min / 2;
+          lowContrastMins[y][x] = min;
+        }
+      }
+    }
+  }
+
+  /**
+   * Applies the neighbour correction of {@link #calculateBlackPoints} to low contrast blocks, in
+   * the same order, so each block sees its neighbours' final black points.
+   */
+  private static void correctLowContrastBlocks(int subWidth,
+                                               int subHeight,
+                                               int[][] blackPoints,
+                                               int[][] lowContrastMins) {
+    for (int y = 1; y < subHeight; y++) {
+      for (int x = 1; x < subWidth; x++) {
+        int min = lowContrastMins[y][x];
+        if (min >= 0) {
+          int averageNeighborBlackPoint =
+              (blackPoints[y - 1][x] + (2 * blackPoints[y][x - 1]) + blackPoints[y - 1][x - 1]) / 4;
+          if (min < averageNeighborBlackPoint) {
+            blackPoints[y][x] = averageNeighborBlackPoint;
+          }
+        }
+      }
+    }
   }
 
 }
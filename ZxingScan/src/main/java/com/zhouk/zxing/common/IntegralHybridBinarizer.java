@@ -0,0 +1,168 @@
+/*
+ * Copyright 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.common;
+
+
+import com.zhouk.zxing.Binarizer;
+import com.zhouk.zxing.LuminanceSource;
+import com.zhouk.zxing.NotFoundException;
+
+/**
+ * Produces exactly the same bits as {@link HybridBinarizer}, for less work per frame.
+ *
+ * The 5x5 neighbourhood average each block is thresholded with is read off a summed-area table
+ * of the black points in four lookups, instead of being summed from 25 blocks. The black points
+ * and the table live in a per-thread context which only grows, so a thread decoding preview
+ * frames of one size allocates nothing but the result matrix. The black points themselves are
+ * calculated, and the blocks thresholded, by the same code as in {@link HybridBinarizer}.
+ */
+public final class IntegralHybridBinarizer extends GlobalHistogramBinarizer {
+
+  private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<Context>() {
+    @Override
+    protected Context initialValue() {
+      return new Context();
+    }
+  };
+
+  private BitMatrix matrix;
+
+  public IntegralHybridBinarizer(LuminanceSource source) {
+    super(source);
+  }
+
+  @Override
+  public BitMatrix getBlackMatrix() throws NotFoundException {
+    if (matrix != null) {
+      return matrix;
+    }
+    LuminanceSource source = getLuminanceSource();
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (width >= HybridBinarizer.MINIMUM_DIMENSION && height >= HybridBinarizer.MINIMUM_DIMENSION) {
+      byte[] luminances = source.getStridedMatrix();
+      int matrixOffset = source.getMatrixOffset();
+      int stride = source.getMatrixStride();
+      int subWidth = width >> HybridBinarizer.BLOCK_SIZE_POWER;
+      if ((width & HybridBinarizer.BLOCK_SIZE_MASK) != 0) {
+        subWidth++;
+      }
+      int subHeight = height >> HybridBinarizer.BLOCK_SIZE_POWER;
+      if ((height & HybridBinarizer.BLOCK_SIZE_MASK) != 0) {
+        subHeight++;
+      }
+      Context context = CONTEXT.get();
+      context.ensureCapacity(subWidth, subHeight);
+      HybridBinarizer.calculateBlackPoints(luminances, matrixOffset, stride, subWidth, subHeight, width, height,
+          context.blackPoints);
+      calculateSums(context.blackPoints, subWidth, subHeight, context.sums);
+
+      BitMatrix newMatrix = BitPool.acquireMatrix(width, height);
+      calculateThresholdForBlock(luminances, matrixOffset, stride, subWidth, subHeight, width, height, context.sums, newMatrix);
+      matrix = newMatrix;
+    } else {
+      // If the image is too small, fall back to the global histogram approach.
+      matrix = super.getBlackMatrix();
+    }
+    return matrix;
+  }
+
+  @Override
+  public Binarizer createBinarizer(LuminanceSource source) {
+    return new IntegralHybridBinarizer(source);
+  }
+
+  /**
+   * Fills the summed-area table of the black points: entry (y, x) of the (subHeight + 1) x
+   * (subWidth + 1) table holds the sum of all black points above and to the left of block (y, x).
+   */
+  private static void calculateSums(int[][] blackPoints, int subWidth, int subHeight, int[] sums) {
+    int stride = subWidth + 1;
+    for (int x = 0; x <= subWidth; x++) {
+      sums[x] = 0;
+    }
+    for (int y = 0; y < subHeight; y++) {
+      int rowSum = 0;
+      int offset = (y + 1) * stride;
+      sums[offset] = 0;
+      int[] blackRow = blackPoints[y];
+      for (int x = 0; x < subWidth; x++) {
+        rowSum += blackRow[x];
+        sums[offset + x + 1] = sums[offset - stride + x + 1] + rowSum;
+      }
+    }
+  }
+
+  /**
+   * For each block in the image, thresholds with the average black point of the 5x5 grid of
+   * blocks around it, clamped to lie inside the image like {@link HybridBinarizer} does.
+   */
+  private static void calculateThresholdForBlock(byte[] luminances,
+                                                 int matrixOffset,
+                                                 int stride,
+                                                 int subWidth,
+                                                 int subHeight,
+                                                 int width,
+                                                 int height,
+                                                 int[] sums,
+                                                 BitMatrix matrix) {
+    int sumsStride = subWidth + 1;
+    int maxYOffset = height - HybridBinarizer.BLOCK_SIZE;
+    int maxXOffset = width - HybridBinarizer.BLOCK_SIZE;
+    for (int y = 0; y < subHeight; y++) {
+      int yoffset = y << HybridBinarizer.BLOCK_SIZE_POWER;
+      if (yoffset > maxYOffset) {
+        yoffset = maxYOffset;
+      }
+      int top = HybridBinarizer.cap(y, subHeight - 3);
+      int above = (top - 2) * sumsStride;
+      int below = (top + 3) * sumsStride;
+      for (int x = 0; x < subWidth; x++) {
+        int xoffset = x << HybridBinarizer.BLOCK_SIZE_POWER;
+        if (xoffset > maxXOffset) {
+          xoffset = maxXOffset;
+        }
+        int left = HybridBinarizer.cap(x, subWidth - 3);
+        int sum = sums[below + left + 3] - sums[below + left - 2]
+            - sums[above + left + 3] + sums[above + left - 2];
+        int average = sum / 25;
+        HybridBinarizer.thresholdBlock(luminances, matrixOffset, stride, xoffset, yoffset, average, matrix);
+      }
+    }
+  }
+
+  /**
+   * Working arrays of one thread, grown to the largest frame it has binarized.
+   */
+  private static final class Context {
+
+    int[][] blackPoints = new int[0][];
+    int[] sums = new int[0];
+
+    void ensureCapacity(int subWidth, int subHeight) {
+      if (blackPoints.length < subHeight || blackPoints[0].length < subWidth) {
+        int rows = Math.max(subHeight, blackPoints.length);
+        int columns = blackPoints.length > 0 ? Math.max(subWidth, blackPoints[0].length) : subWidth;
+        blackPoints = new int[rows][columns];
+      }
+      if (sums.length < (subWidth + 1) * (subHeight + 1)) {
+        sums = new int[(subWidth + 1) * (subHeight + 1)];
+      }
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.common;
+
+
+import android.annotation.TargetApi;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a range of rows into horizontal strips and processes them on a {@link ForkJoinPool}.
+ * Used for large images by the binarizers and by the other row by row stages; each strip must only
+ * write its own rows.
+ *
+ * ForkJoinPool arrived on Android in API 21. Callers check {@link #isAvailable()} and stay on
+ * their serial path without it, so that nothing here is loaded on older devices. The check looks
+ * for the class itself rather than at the Android version, so it holds on any JVM.
+ */
+@TargetApi(21)
+public final class RowStrips {
+
+  /**
+   * Work done on one strip of rows.
+   */
+  public interface Strip {
+    void run(int start, int end);
+  }
+
+  // Roughly this many strips per thread, so that uneven strips still balance out
+  private static final int STRIPS_PER_THREAD = 4;
+
+  private static final boolean AVAILABLE = hasForkJoinPool();
+
+  private RowStrips() {
+  }
+
+  /**
+   * @return whether this runtime has {@link ForkJoinPool}
+   */
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  private static boolean hasForkJoinPool() {
+    try {
+      Class.forName("java.util.concurrent.ForkJoinPool");
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Runs {@code strip} over the rows [0, rows) in parallel and waits for all of it to finish.
+   */
+  public static void run(ForkJoinPool pool, int rows, Strip strip) {
+    int grain = Math.max(1, rows / (pool.getParallelism() * STRIPS_PER_THREAD));
+    pool.invoke(new StripTask(strip, 0, rows, grain));
+  }
+
+  private static final class StripTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Strip strip;
+    private final int start;
+    private final int end;
+    private final int grain;
+
+    StripTask(Strip strip, int start, int end, int grain) {
+      this.strip = strip;
+      this.start = start;
+      this.end = end;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= grain) {
+        strip.run(start, end);
+      } else {
+        int middle = (start + end) >>> 1;
+        invokeAll(new StripTask(strip, start, middle, grain),
+            new StripTask(strip, middle, end, grain));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.common;
+
+
+import android.annotation.TargetApi;
+
+import com.zhouk.zxing.Binarizer;
+import com.zhouk.zxing.LuminanceSource;
+import com.zhouk.zxing.NotFoundException;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Thresholds each pixel against the mean and standard deviation of the square window around it,
+ * after Sauvola and Pietikäinen, with the normalization of Wolf and Jolion: a pixel is black if it
+ * is at most {@code mean - k * (1 - deviation / R) * (mean - M)}, where M is the darkest luminance
+ * in the image and R the largest window deviation. Sauvola's original fixes R at 128, which
+ * assumes the full contrast of a scanned page; on a camera frame of a faded thermal print or a
+ * glossy label no window comes close, and everything thresholds white. Normalizing by the frame's
+ * own contrast keeps the behavior that matters here: windows with as much contrast as the symbol
+ * get a threshold near their mean, while glare and flat background, having little contrast, get
+ * one well below it and stay white.
+ *
+ * The window sums come from integral images of the luminances and of their squares, so the cost
+ * per pixel does not depend on the window size. Like {@link IntegralHybridBinarizer} the integral
+ * images live in a per-thread context which only grows, but only up to the size of a large preview
+ * frame: a still bigger than that gets integral images of its own, dropped once it is binarized,
+ * rather than pinning hundreds of megabytes to every decoding thread. They are kept in ints and
+ * are allowed to overflow: only differences over one window are ever used, and those are exact as
+ * long as a window's sum of squares fits, which {@link #MAX_RADIUS} guarantees.
+ *
+ * Like {@link HybridBinarizer}, this extends GlobalHistogramBinarizer and leaves 1D rows to it.
+ */
+public final class SauvolaBinarizer extends GlobalHistogramBinarizer {
+
+  public static final double DEFAULT_K = 0.5;
+  // Largest window half size whose sum of squares, (2r + 1)^2 * 255^2, fits in an int
+  public static final int MAX_RADIUS = 90;
+  private static final int MIN_RADIUS = 7;
+  // R is the largest deviation among the windows around every SAMPLE_STEP'th pixel and row
+  private static final int SAMPLE_STEP = 4;
+  private static final int MINIMUM_DIMENSION = 40;
+  // Largest integral image kept for the next frame: a 1920x1080 frame's, 8 MB per table
+  static final int MAX_CACHED_SIZE = (1920 + 1) * (1080 + 1);
+
+  private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<Context>() {
+    @Override
+    protected Context initialValue() {
+      return new Context();
+    }
+  };
+
+  private final int radius;
+  private final double k;
+  private BitMatrix matrix;
+
+  /**
+   * Uses a window of a sixteenth of the smaller image dimension on either side of each pixel,
+   * which covers several modules of a symbol filling the frame.
+   */
+  public SauvolaBinarizer(LuminanceSource source) {
+    this(source, 0, DEFAULT_K, null);
+  }
+
+  /**
+   * @param radius half the window size, at most {@link #MAX_RADIUS}, or 0 to size the window
+   *  from the image
+   * @param k how far below the mean, as a fraction of the mean's distance to the darkest pixel,
+   *  a window without contrast is thresholded
+   * @param pool pool to binarize large images on, or null to stay on the calling thread; ignored
+   *  where there is no ForkJoinPool, as before API 21
+   */
+  @TargetApi(21)
+  public SauvolaBinarizer(LuminanceSource source, int radius, double k, ForkJoinPool pool) {
+    super(source, pool);
+    if (radius < 0 || radius > MAX_RADIUS) {
+      throw new IllegalArgumentException("radius must be between 0 and " + MAX_RADIUS);
+    }
+    if (k < 0.0 || k > 1.0) {
+      throw new IllegalArgumentException("k must be between 0 and 1");
+    }
+    this.radius = radius;
+    this.k = k;
+  }
+
+  @Override
+  public BitMatrix getBlackMatrix() throws NotFoundException {
+    if (matrix != null) {
+      return matrix;
+    }
+    LuminanceSource source = getLuminanceSource();
+    final int width = source.getWidth();
+    final int height = source.getHeight();
+    if (width >= MINIMUM_DIMENSION && height >= MINIMUM_DIMENSION) {
+      final byte[] luminances = source.getStridedMatrix();
+      final int matrixOffset = source.getMatrixOffset();
+      final int stride = source.getMatrixStride();
+      final int windowRadius = radius > 0 ? radius
+          : Math.min(MAX_RADIUS, Math.max(MIN_RADIUS, Math.min(width, height) >> 4));
+
+      Context context = getContext(width, height);
+      final int[] sums = context.sums;
+      final int[] squares = context.squares;
+      final int darkest =
+          calculateIntegrals(luminances, matrixOffset, stride, width, height, sums, squares);
+      final double maxDeviation =
+          Math.sqrt(maxVariance(width, height, windowRadius, sums, squares));
+
+      final BitMatrix newMatrix = BitPool.acquireMatrix(width, height);
+      if (isParallel(height)) {
+        RowStrips.run(getPool(), height, new RowStrips.Strip() {
+          @Override
+          public void run(int start, int end) {
+            thresholdRows(luminances, matrixOffset, stride, start, end, width, height,
+                windowRadius, k, darkest, maxDeviation, sums, squares, newMatrix);
+          }
+        });
+      } else {
+        thresholdRows(luminances, matrixOffset, stride, 0, height, width, height,
+            windowRadius, k, darkest, maxDeviation, sums, squares, newMatrix);
+      }
+      matrix = newMatrix;
+    } else {
+      // If the image is too small, fall back to the global histogram approach.
+      matrix = super.getBlackMatrix();
+    }
+    return matrix;
+  }
+
+  @Override
+  public Binarizer createBinarizer(LuminanceSource source) {
+    return new SauvolaBinarizer(source, radius, k, getPool());
+  }
+
+  /**
+   * Fills the (height + 1) x (width + 1) integral images: entry (y, x) holds the sum of the
+   * luminances, or of their squares, above and to the left of pixel (y, x). Both wrap around.
+   *
+   * @return the darkest luminance in the image
+   */
+  private static int calculateIntegrals(byte[] luminances,
+                                        int matrixOffset,
+                                        int stride,
+                                        int width,
+                                        int height,
+                                        int[] sums,
+                                        int[] squares) {
+    int integralWidth = width + 1;
+    for (int x = 0; x <= width; x++) {
+      sums[x] = 0;
+      squares[x] = 0;
+    }
+    int darkest = 0xFF;
+    for (int y = 0; y < height; y++) {
+      int rowSum = 0;
+      int rowSquares = 0;
+      int offset = (y + 1) * integralWidth;
+      int pixelOffset = matrixOffset + y * stride;
+      sums[offset] = 0;
+      squares[offset] = 0;
+      for (int x = 0; x < width; x++) {
+        int pixel = luminances[pixelOffset + x] & 0xFF;
+        if (pixel < darkest) {
+          darkest = pixel;
+        }
+        rowSum += pixel;
+        rowSquares += pixel * pixel;
+        sums[offset + x + 1] = sums[offset - integralWidth + x + 1] + rowSum;
+        squares[offset + x + 1] = squares[offset - integralWidth + x + 1] + rowSquares;
+      }
+    }
+    return darkest;
+  }
+
+  /**
+   * @return the largest variance among the windows around a grid of sample pixels
+   */
+  private static double maxVariance(int width, int height, int radius, int[] sums, int[] squares) {
+    int integralWidth = width + 1;
+    double max = 0.0;
+    for (int y = SAMPLE_STEP / 2; y < height; y += SAMPLE_STEP) {
+      int top = Math.max(0, y - radius) * integralWidth;
+      int bottom = Math.min(height, y + radius + 1) * integralWidth;
+      int rows = (bottom - top) / integralWidth;
+      for (int x = SAMPLE_STEP / 2; x < width; x += SAMPLE_STEP) {
+        int left = Math.max(0, x - radius);
+        int right = Math.min(width, x + radius + 1);
+        double count = rows * (right - left);
+        double mean = (sums[bottom + right] - sums[bottom + left]
+            - sums[top + right] + sums[top + left]) / count;
+        double variance = (squares[bottom + right] - squares[bottom + left]
+            - squares[top + right] + squares[top + left]) / count - mean * mean;
+        if (variance > max) {
+          max = variance;
+        }
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Thresholds the rows [startY, endY). The window is clipped to the image at the edges.
+   */
+  private static void thresholdRows(byte[] luminances,
+                                    int matrixOffset,
+                                    int stride,
+                                    int startY,
+                                    int endY,
+                                    int width,
+                                    int height,
+                                    int radius,
+                                    double k,
+                                    int darkest,
+                                    double maxDeviation,
+                                    int[] sums,
+                                    int[] squares,
+                                    BitMatrix matrix) {
+    int integralWidth = width + 1;
+    // Scales a window's deviation into its share of the contrast term
+    double scale = maxDeviation > 0.0 ? k / maxDeviation : 0.0;
+    for (int y = startY; y < endY; y++) {
+      int top = Math.max(0, y - radius) * integralWidth;
+      int bottom = Math.min(height, y + radius + 1) * integralWidth;
+      int rows = (bottom - top) / integralWidth;
+      int pixelOffset = matrixOffset + y * stride;
+      // Only windows clipped at the left or right edge have a different size
+      double interiorInverseCount = 1.0 / (rows * (2 * radius + 1));
+      int interiorEnd = width - radius;
+      for (int x = 0; x < width; x++) {
+        int left = Math.max(0, x - radius);
+        int right = Math.min(width, x + radius + 1);
+        double inverseCount = x >= radius && x < interiorEnd
+            ? interiorInverseCount : 1.0 / (rows * (right - left));
+        int sum = sums[bottom + right] - sums[bottom + left] - sums[top + right] + sums[top + left];
+        double mean = sum * inverseCount;
+        double range = mean - darkest;
+        // The threshold is mean - k * range + k * range * deviation / R; compare against it
+        // without taking the square root of the variance
+        double excess = (luminances[pixelOffset + x] & 0xFF) - mean + k * range;
+        if (excess <= 0.0) {
+          matrix.set(x, y);
+        } else {
+          int sumSquares = squares[bottom + right] - squares[bottom + left]
+              - squares[top + right] + squares[top + left];
+          double variance = sumSquares * inverseCount - mean * mean;
+          double factor = scale * range;
+          if (excess * excess <= factor * factor * variance) {
+            matrix.set(x, y);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return this thread's context, grown to fit an image of the given size, or a context of its
+   *  own for an image too large to keep the integral images of
+   */
+  static Context getContext(int width, int height) {
+    int size = (width + 1) * (height + 1);
+    if (size > MAX_CACHED_SIZE) {
+      return new Context(size);
+    }
+    Context context = CONTEXT.get();
+    context.ensureCapacity(size);
+    return context;
+  }
+
+  /**
+   * Integral images of one thread, grown to the largest frame it has binarized.
+   */
+  static final class Context {
+
+    int[] sums;
+    int[] squares;
+
+    Context() {
+      this(0);
+    }
+
+    Context(int size) {
+      sums = new int[size];
+      squares = new int[size];
+    }
+
+    void ensureCapacity(int size) {
+      if (sums.length < size) {
+        sums = new int[size];
+        squares = new int[size];
+      }
+    }
+  }
+
+}
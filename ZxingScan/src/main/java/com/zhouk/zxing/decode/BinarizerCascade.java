@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+import com.zhouk.zxing.Binarizer;
+import com.zhouk.zxing.LuminanceSource;
+import com.zhouk.zxing.common.BlackPointSmoother;
+import com.zhouk.zxing.common.GlobalHistogramBinarizer;
+import com.zhouk.zxing.common.IntegralHybridBinarizer;
+import com.zhouk.zxing.common.SauvolaBinarizer;
+
+import java.util.Arrays;
+
+/**
+ * Decides which binarizers a frame goes through, and in which order. A frame is binarized by the
+ * first stage; the next stage only runs if that failed to decode but the detector saw a finder
+ * pattern, so frames with nothing in view pay for one binarization.
+ *
+ * The cascade keeps each stage's hit rate over its last {@link #WINDOW} attempts and moves a stage
+ * ahead of a cheaper one once it has {@link #MIN_SAMPLES} attempts and its hit rate beats the
+ * cheaper stage's by {@link #REORDER_MARGIN}: under even light the cheap
+ * global threshold leads, on shadowed labels the local threshold takes over, and on glossy or
+ * faded labels the Sauvola threshold does, where it is one of the stages. Every
+ * {@link #PROBE_INTERVAL}th frame runs in cost order regardless, so a stage that was demoted
+ * keeps being measured and can win its place back when the lighting changes.
+ *
+ * Only frames with a finder pattern in view should be recorded, for every stage: those are the
+ * only frames a later stage ever runs on, and blank scenes counted against the leading stage alone
+ * would hand its place to a stage that was never tried on them.
+ */
+public final class BinarizerCascade {
+
+    /**
+     * The binarizers, cheapest first.
+     */
+    public enum Stage {
+
+        GLOBAL {
+            @Override
+            public Binarizer createBinarizer(LuminanceSource source) {
+                return new GlobalHistogramBinarizer(source);
+            }
+
+            @Override
+            public Binarizer createBinarizer(LuminanceSource source, BlackPointSmoother smoother) {
+                return new GlobalHistogramBinarizer(source, null, smoother);
+            }
+        },
+
+        HYBRID {
+            @Override
+            public Binarizer createBinarizer(LuminanceSource source) {
+                return new IntegralHybridBinarizer(source);
+            }
+        },
+
+        /**
+         * Local mean and deviation threshold, for glare and low contrast prints.
+         */
+        SAUVOLA {
+            @Override
+            public Binarizer createBinarizer(LuminanceSource source) {
+                return new SauvolaBinarizer(source);
+            }
+        };
+
+        public abstract Binarizer createBinarizer(LuminanceSource source);
+
+        /**
+         * @param smoother black point history for stages which use a global black point, or null
+         */
+        public Binarizer createBinarizer(LuminanceSource source, BlackPointSmoother smoother) {
+            return createBinarizer(source);
+        }
+    }
+
+    private static final Stage[] ALL_STAGES = Stage.values();
+    private static final Stage[] DEFAULT_STAGES = {Stage.GLOBAL, Stage.HYBRID};
+    private static final int WINDOW = 8;
+    private static final int MIN_SAMPLES = 4;
+    private static final double REORDER_MARGIN = 0.15;
+    private static final int PROBE_INTERVAL = 8;
+
+    // Outcomes of each stage's last attempts, as a ring
+    private final boolean[][] recent = new boolean[ALL_STAGES.length][WINDOW];
+    private final int[] recentCount = new int[ALL_STAGES.length];
+    private final int[] recentHits = new int[ALL_STAGES.length];
+    private final long[] attempts = new long[ALL_STAGES.length];
+    private final long[] hits = new long[ALL_STAGES.length];
+    private final Stage[] costOrder;
+    private Stage[] order;
+    private long frames;
+
+    /**
+     * Cascades through the global and hybrid stages. {@link Stage#SAUVOLA} has to be asked for,
+     * until replays of recorded scans show it brings the first decode forward; see
+     * {@link FrameReplay}.
+     */
+    public BinarizerCascade() {
+        this(DEFAULT_STAGES);
+    }
+
+    /**
+     * @param stages the stages to use; they are tried cheapest first until the hit rates say
+     *  otherwise
+     */
+    public BinarizerCascade(Stage... stages) {
+        if (stages.length == 0) {
+            throw new IllegalArgumentException("No stages");
+        }
+        costOrder = stages.clone();
+        Arrays.sort(costOrder);
+        order = costOrder.clone();
+    }
+
+    /**
+     * @return the stages to try on the next frame, in order; the caller must not modify it
+     */
+    public synchronized Stage[] nextOrder() {
+        return frames++ % PROBE_INTERVAL == 0 ? costOrder : order;
+    }
+
+    /**
+     * Records whether a stage decoded the frame it ran on, a frame where a finder pattern was
+     * seen.
+     */
+    public synchronized void record(Stage stage, boolean hit) {
+        int index = stage.ordinal();
+        int slot = (int) (attempts[index] % WINDOW);
+        if (recentCount[index] == WINDOW) {
+            if (recent[index][slot]) {
+                recentHits[index]--;
+            }
+        } else {
+            recentCount[index]++;
+        }
+        recent[index][slot] = hit;
+        if (hit) {
+            recentHits[index]++;
+        }
+        attempts[index]++;
+        if (hit) {
+            hits[index]++;
+        }
+        reorder();
+    }
+
+    private void reorder() {
+        // Insertion sort from cost order: a stage only passes a cheaper one by a clear margin
+        Stage[] sorted = costOrder.clone();
+        for (int i = 1; i < sorted.length; i++) {
+            Stage stage = sorted[i];
+            int j = i;
+            while (j > 0 && recentCount[stage.ordinal()] >= MIN_SAMPLES
+                    && hitRate(stage) > hitRate(sorted[j - 1]) + REORDER_MARGIN) {
+                sorted[j] = sorted[j - 1];
+                j--;
+            }
+            sorted[j] = stage;
+        }
+        order = sorted;
+    }
+
+    private double hitRate(Stage stage) {
+        int index = stage.ordinal();
+        return recentCount[index] == 0 ? 0.0 : (double) recentHits[index] / recentCount[index];
+    }
+
+    /**
+     * @return the stage currently tried first
+     */
+    public synchronized Stage getLeadingStage() {
+        return order[0];
+    }
+
+    /**
+     * @return the fraction of the stage's recent attempts which decoded
+     */
+    public synchronized double getHitRate(Stage stage) {
+        return hitRate(stage);
+    }
+
+    public synchronized long getAttempts(Stage stage) {
+        return attempts[stage.ordinal()];
+    }
+
+    public synchronized long getHits(Stage stage) {
+        return hits[stage.ordinal()];
+    }
+
+}
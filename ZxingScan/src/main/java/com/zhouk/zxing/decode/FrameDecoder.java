@@ -0,0 +1,588 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+import com.zhouk.zxing.Binarizer;
+import com.zhouk.zxing.BinaryBitmap;
+import com.zhouk.zxing.DecodeHintType;
+import com.zhouk.zxing.DecodeMetrics;
+import com.zhouk.zxing.LuminanceSource;
+import com.zhouk.zxing.MultiFormatReader;
+import com.zhouk.zxing.PlanarYUVLuminanceSource;
+import com.zhouk.zxing.ReaderException;
+import com.zhouk.zxing.Result;
+import com.zhouk.zxing.ResultPoint;
+import com.zhouk.zxing.ResultPointCallback;
+import com.zhouk.zxing.common.BlackPointSmoother;
+import com.zhouk.zxing.common.GlobalHistogramBinarizer;
+import com.zhouk.zxing.qrcode.detector.FinderPattern;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The scan loop, independent of the camera and of Android's Handler/Looper: YUV frames and the
+ * rectangle to crop from them go in, results come out through a {@link Listener} on a caller
+ * supplied {@link Executor}.
+ *
+ * Frames are decoded by a bounded set of workers, each owning its own {@link MultiFormatReader}.
+ * At most one pending frame is queued per worker; when the workers fall behind the oldest pending
+ * frame is dropped so the newest frame wins. The first successful decode ends the scan: queued
+ * frames are discarded, and results of frames still being decoded are ignored, until
+ * {@link #restart()} is called, unless the decoder is {@link #setContinuous continuous}.
+ * Listener calls are handed to the executor under the decoder lock,
+ * so with an executor which runs tasks in order the listener never sees a failure after the
+ * success or more than one success per scan.
+ *
+ * With a {@link RegionTracker} set, each worker collects the finder patterns of its frames through
+ * {@link DecodeHintType#NEED_RESULT_POINT_CALLBACK} and the next frames are cropped around them.
+ * The same finder patterns let a {@link BinarizerCascade} decide whether a frame deserves a second
+ * binarization.
+ *
+ * With {@link #setMultiResolution multi-resolution} on, large crops are first decoded from a
+ * downsampled {@link LuminancePyramid} level, the coarsest one in which the module size last
+ * measured by the finder patterns stays readable, and at finer levels only if that fails.
+ *
+ * A frame whose decode throws is logged and reported as a failure; the worker goes on with the
+ * next frame.
+ */
+public final class FrameDecoder {
+
+    /**
+     * Receives results and spent frames from the decoder, on the decoder's executor.
+     */
+    public interface Listener {
+
+        /**
+         * The listener takes over the decoded frame: it is not passed to
+         * {@link #onFrameReleased(byte[])}, and the listener must release it itself once the
+         * source is no longer needed.
+         */
+        void onDecodeSucceeded(Result rawResult, PlanarYUVLuminanceSource source, byte[] data);
+
+        void onDecodeFailed();
+
+        /**
+         * The decoder no longer references this frame, which may now be reused.
+         */
+        void onFrameReleased(byte[] data);
+    }
+
+    /**
+     * Runs listener calls on the worker thread which produced them.
+     */
+    public static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final Logger LOG = Logger.getLogger(FrameDecoder.class.getName());
+
+    private static final int MAX_DEFAULT_WORKERS = 4;
+    // Frames without a finder pattern after which a measured module size is forgotten
+    private static final int MODULE_SIZE_FRAMES = 8;
+
+    private final Listener listener;
+    private final Executor executor;
+    private final Worker[] workers;
+    private final ArrayDeque<Frame> pendingFrames;
+    private int idleWorkers;
+    private int generation;
+    private boolean succeeded;
+    private boolean continuous;
+    private volatile FrameQualityFilter qualityFilter;
+    private volatile RegionTracker regionTracker;
+    private volatile BinarizerCascade binarizerCascade;
+    private volatile ResultDebouncer resultDebouncer;
+    private volatile BlackPointSmoother blackPointSmoother;
+    private volatile boolean multiResolution;
+    private boolean running = true;
+
+    public FrameDecoder(int workerCount, Map<DecodeHintType, ?> hints, Executor executor,
+                        Listener listener) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be at least 1");
+        }
+        this.listener = listener;
+        this.executor = executor;
+        pendingFrames = new ArrayDeque<>(workerCount);
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(i, hints);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * @return one worker per spare core, leaving one for the camera and UI threads
+     */
+    public static int defaultWorkerCount() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(cores - 1, MAX_DEFAULT_WORKERS));
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Queues a frame for decoding.
+     *
+     * @param yuvData    A frame whose Y plane comes first, such as NV21.
+     * @param dataWidth  The width of the frame.
+     * @param dataHeight The height of the frame.
+     * @param left       Left edge of the area to decode.
+     * @param top        Top edge of the area to decode.
+     * @param width      Width of the area to decode.
+     * @param height     Height of the area to decode.
+     * @return false if the frame was not accepted, because the scan already succeeded or the
+     * decoder was shut down; the frame has then already been released
+     */
+    public boolean decode(byte[] yuvData, int dataWidth, int dataHeight,
+                          int left, int top, int width, int height) {
+        Frame frame = new Frame(yuvData, dataWidth, dataHeight, left, top, width, height);
+        boolean accepted = false;
+        synchronized (this) {
+            if (running && !succeeded) {
+                accepted = true;
+                frame.generation = generation;
+                if (pendingFrames.size() == workers.length) {
+                    release(pendingFrames.pollFirst());
+                }
+                pendingFrames.addLast(frame);
+                notify();
+            } else {
+                release(frame);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * @return true if a newly submitted frame would be picked up right away
+     */
+    public synchronized boolean hasIdleWorker() {
+        return running && !succeeded && idleWorkers > pendingFrames.size();
+    }
+
+    /**
+     * In continuous mode a successful decode does not end the scan, and every frame which is not
+     * dropped reports either a success or a failure.
+     */
+    public synchronized void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+    }
+
+    /**
+     * Skips frames the filter rejects before they are binarized; they are reported as failures.
+     *
+     * @param qualityFilter the filter, or null to decode every frame
+     */
+    public void setQualityFilter(FrameQualityFilter qualityFilter) {
+        this.qualityFilter = qualityFilter;
+    }
+
+    public FrameQualityFilter getQualityFilter() {
+        return qualityFilter;
+    }
+
+    /**
+     * Narrows each frame's crop to the region where recent frames found finder patterns.
+     *
+     * @param regionTracker the tracker, or null to always decode the full crop
+     */
+    public void setRegionTracker(RegionTracker regionTracker) {
+        this.regionTracker = regionTracker;
+    }
+
+    public RegionTracker getRegionTracker() {
+        return regionTracker;
+    }
+
+    /**
+     * Chooses the binarizers each frame goes through.
+     *
+     * @param binarizerCascade the cascade, or null to only use {@link GlobalHistogramBinarizer}
+     */
+    public void setBinarizerCascade(BinarizerCascade binarizerCascade) {
+        this.binarizerCascade = binarizerCascade;
+    }
+
+    public BinarizerCascade getBinarizerCascade() {
+        return binarizerCascade;
+    }
+
+    /**
+     * Reports repeat decodes of a symbol which is still in view as failures instead of successes.
+     * They still move the {@link RegionTracker}.
+     *
+     * @param resultDebouncer the debouncer, or null to report every decode
+     */
+    public void setResultDebouncer(ResultDebouncer resultDebouncer) {
+        this.resultDebouncer = resultDebouncer;
+    }
+
+    public ResultDebouncer getResultDebouncer() {
+        return resultDebouncer;
+    }
+
+    /**
+     * Carries the global black point across frames, so that frames too flat to estimate their own
+     * are still binarized.
+     *
+     * @param blackPointSmoother the session's black point history, or null to binarize every frame
+     *  on its own
+     */
+    public void setBlackPointSmoother(BlackPointSmoother blackPointSmoother) {
+        this.blackPointSmoother = blackPointSmoother;
+    }
+
+    public BlackPointSmoother getBlackPointSmoother() {
+        return blackPointSmoother;
+    }
+
+    /**
+     * @param multiResolution whether to try large crops at half or quarter resolution first
+     */
+    public void setMultiResolution(boolean multiResolution) {
+        this.multiResolution = multiResolution;
+    }
+
+    public boolean isMultiResolution() {
+        return multiResolution;
+    }
+
+    /**
+     * Starts a new scan after a successful decode.
+     */
+    public synchronized void restart() {
+        generation++;
+        succeeded = false;
+    }
+
+    /**
+     * Stops all workers once their current frame is done. Queued frames are released.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        releasePendingFrames();
+        notifyAll();
+    }
+
+    private void releasePendingFrames() {
+        Frame frame;
+        while ((frame = pendingFrames.pollFirst()) != null) {
+            release(frame);
+        }
+    }
+
+    private void release(final Frame frame) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onFrameReleased(frame.data);
+            }
+        });
+    }
+
+    private synchronized Frame takeFrame() throws InterruptedException {
+        while (running && pendingFrames.isEmpty()) {
+            idleWorkers++;
+            try {
+                wait();
+            } finally {
+                idleWorkers--;
+            }
+        }
+        // Newest first: older frames only get decoded while there are spare workers
+        return running ? pendingFrames.pollLast() : null;
+    }
+
+    private synchronized void deliver(final Frame frame, final Result rawResult,
+                                      final PlanarYUVLuminanceSource source) {
+        if (running && !succeeded && frame.generation == generation) {
+            if (rawResult != null) {
+                if (!continuous) {
+                    succeeded = true;
+                    releasePendingFrames();
+                }
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onDecodeSucceeded(rawResult, source, frame.data);
+                    }
+                });
+                return;
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onDecodeFailed();
+                }
+            });
+        }
+        release(frame);
+    }
+
+    private static final class Frame {
+        final byte[] data;
+        final int dataWidth;
+        final int dataHeight;
+        final int left;
+        final int top;
+        final int width;
+        final int height;
+        int generation;
+
+        Frame(byte[] data, int dataWidth, int dataHeight, int left, int top, int width, int height) {
+            this.data = data;
+            this.dataWidth = dataWidth;
+            this.dataHeight = dataHeight;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final class Worker extends Thread implements ResultPointCallback {
+
+        private final MultiFormatReader multiFormatReader;
+        private final ResultPointCallback hintCallback;
+        private final List<ResultPoint> foundPoints = new ArrayList<>();
+        private final int[] crop = new int[4];
+        private final LuminancePyramid pyramid = new LuminancePyramid();
+        // Coordinates of the level being decoded are the frame's divided by this
+        private int pointScale = 1;
+        private float moduleSizeSum;
+        private int moduleSizeCount;
+        private float moduleSize;
+        private int framesWithoutModuleSize;
+
+        Worker(int index, Map<DecodeHintType, ?> hints) {
+            super("FrameDecoder-" + index);
+            setDaemon(true);
+            // Collect the finder patterns of every frame for the region tracker, still passing
+            // them on to a callback the caller asked for
+            Map<DecodeHintType, Object> workerHints = new EnumMap<>(DecodeHintType.class);
+            if (hints != null) {
+                workerHints.putAll(hints);
+            }
+            hintCallback = (ResultPointCallback) workerHints.get(
+                    DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+            workerHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, this);
+            multiFormatReader = new MultiFormatReader();
+            multiFormatReader.setHints(workerHints);
+        }
+
+        @Override
+        public void foundPossibleResultPoint(ResultPoint point) {
+            if (point instanceof FinderPattern) {
+                moduleSizeSum += ((FinderPattern) point).getEstimatedModuleSize() * pointScale;
+                moduleSizeCount++;
+            }
+            if (pointScale != 1) {
+                point = new ResultPoint(point.getX() * pointScale, point.getY() * pointScale);
+            }
+            foundPoints.add(point);
+            if (hintCallback != null) {
+                hintCallback.foundPossibleResultPoint(point);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Frame frame;
+                while ((frame = takeFrame()) != null) {
+                    decode(frame);
+                }
+            } catch (InterruptedException ie) {
+                // exit
+            }
+        }
+
+        private void decode(Frame frame) {
+            boolean delivered = false;
+            try {
+                Result rawResult = null;
+                PlanarYUVLuminanceSource source = null;
+                try {
+                    DecodeMetrics.beginFrame();
+                    DecodeMetrics.enter(DecodeMetrics.Stage.CROP);
+                    crop[0] = frame.left;
+                    crop[1] = frame.top;
+                    crop[2] = frame.width;
+                    crop[3] = frame.height;
+                    RegionTracker tracker = regionTracker;
+                    if (tracker != null) {
+                        tracker.narrow(crop);
+                    }
+                    source = new PlanarYUVLuminanceSource(frame.data, frame.dataWidth,
+                            frame.dataHeight, crop[0], crop[1], crop[2], crop[3], false);
+                    FrameQualityFilter filter = qualityFilter;
+                    if (filter != null) {
+                        DecodeMetrics.enter(DecodeMetrics.Stage.QUALITY);
+                    }
+                    // Scored on the caller's window, which stays put while the tracker moves the
+                    // crop, so the motion score compares the same pixels frame after frame
+                    if (filter == null || filter.accept(frame.data, frame.dataWidth,
+                            frame.left, frame.top, frame.width, frame.height)) {
+                        foundPoints.clear();
+                        moduleSizeSum = 0.0f;
+                        moduleSizeCount = 0;
+                        BinarizerCascade cascade = binarizerCascade;
+                        BinarizerCascade.Stage[] order = cascade == null ? null : cascade.nextOrder();
+                        if (multiResolution) {
+                            pyramid.reset(source);
+                            // Coarsest first; finer levels only if the coarser ones failed
+                            for (int level = pyramid.getCoarsestLevel(moduleSize); level >= 0; level--) {
+                                pointScale = 1 << level;
+                                rawResult = decodeLevel(pyramid.getLevel(level), cascade, order,
+                                        level == 0);
+                                if (rawResult != null) {
+                                    rawResult = scale(rawResult, pointScale);
+                                    break;
+                                }
+                            }
+                            pointScale = 1;
+                        } else {
+                            rawResult = decodeLevel(source, cascade, order, true);
+                        }
+                        updateModuleSize();
+                        DecodeMetrics.endFrame(rawResult != null);
+                        if (tracker != null) {
+                            track(tracker, rawResult);
+                        }
+                        ResultDebouncer debouncer = resultDebouncer;
+                        if (rawResult != null && debouncer != null && debouncer.isRepeat(rawResult)) {
+                            rawResult = null;
+                        }
+                    } else {
+                        DecodeMetrics.endFrame(false);
+                    }
+                } catch (RuntimeException re) {
+                    // A bad frame, such as a crop outside it, must not take the worker down
+                    LOG.log(Level.WARNING, "Failed to decode frame", re);
+                    rawResult = null;
+                    pointScale = 1;
+                    foundPoints.clear();
+                    DecodeMetrics.endFrame(false);
+                }
+                deliver(frame, rawResult, source);
+                delivered = true;
+            } finally {
+                if (!delivered) {
+                    release(frame);
+                }
+            }
+        }
+
+        /**
+         * Runs one source through the binarizers.
+         *
+         * @param last whether this is the frame's last chance, at full resolution; failures at
+         *  coarser levels are not held against a binarizer, and only this level feeds the black
+         *  point history, so that it sees each frame once and at one resolution
+         */
+        private Result decodeLevel(LuminanceSource source, BinarizerCascade cascade,
+                                   BinarizerCascade.Stage[] order, boolean last) {
+            BlackPointSmoother smoother = last ? blackPointSmoother : null;
+            if (cascade == null) {
+                return decode(new GlobalHistogramBinarizer(source, null, smoother));
+            }
+            Result rawResult = null;
+            int pointsBefore = foundPoints.size();
+            for (BinarizerCascade.Stage stage : order) {
+                rawResult = decode(stage.createBinarizer(source, smoother));
+                boolean finderSeen = foundPoints.size() > pointsBefore;
+                // Later stages only run on frames with a finder pattern, so only those frames count
+                // towards any stage's hit rate; blank scenes would otherwise drag the leader down
+                if (rawResult != null || (last && finderSeen)) {
+                    cascade.record(stage, rawResult != null);
+                }
+                // Only pay for another binarization if a finder pattern was seen
+                if (rawResult != null || !finderSeen) {
+                    break;
+                }
+            }
+            return rawResult;
+        }
+
+        private void updateModuleSize() {
+            if (moduleSizeCount > 0) {
+                moduleSize = moduleSizeSum / moduleSizeCount;
+                framesWithoutModuleSize = 0;
+            } else if (++framesWithoutModuleSize >= MODULE_SIZE_FRAMES) {
+                moduleSize = 0.0f;
+            }
+        }
+
+        private Result scale(Result rawResult, int scale) {
+            if (scale == 1) {
+                return rawResult;
+            }
+            ResultPoint[] points = rawResult.getResultPoints();
+            ResultPoint[] scaled = null;
+            if (points != null) {
+                scaled = new ResultPoint[points.length];
+                for (int i = 0; i < points.length; i++) {
+                    scaled[i] = points[i] == null ? null
+                            : new ResultPoint(points[i].getX() * scale, points[i].getY() * scale);
+                }
+            }
+            Result result = new Result(rawResult.getText(), rawResult.getRawBytes(),
+                    rawResult.getNumBits(), scaled, rawResult.getBarcodeFormat(),
+                    rawResult.getTimestamp());
+            result.putAllMetadata(rawResult.getResultMetadata());
+            return result;
+        }
+
+        private Result decode(Binarizer binarizer) {
+            BinaryBitmap bitmap = new BinaryBitmap(binarizer);
+            try {
+                return multiFormatReader.decodeWithState(bitmap);
+            } catch (ReaderException re) {
+                return null;
+            } finally {
+                multiFormatReader.reset();
+                // The binarizer is thrown away with the bitmap, so its matrix can go to the next one
+                bitmap.recycle();
+            }
+        }
+
+        private void track(RegionTracker tracker, Result rawResult) {
+            ResultPoint[] resultPoints = rawResult == null ? null : rawResult.getResultPoints();
+            if (resultPoints != null && resultPoints.length > 0) {
+                foundPoints.clear();
+                foundPoints.addAll(Arrays.asList(resultPoints));
+            }
+            tracker.update(foundPoints, crop[0], crop[1], rawResult != null);
+            foundPoints.clear();
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+/**
+ * Cheap test run before binarization which rejects frames that have no chance of decoding: frames
+ * smeared by focus blur, and frames taken while the phone is still moving.
+ *
+ * The Y plane inside the crop rectangle is sampled on a sparse grid of at most
+ * {@link #GRID_SIZE} x {@link #GRID_SIZE} points. Sharpness is the variance of the 4-neighbour
+ * Laplacian at those points; motion is the mean absolute difference of the samples from the
+ * previous frame's. A frame is skipped if it is less sharp than the minimum sharpness or moved
+ * more than the maximum motion.
+ *
+ * Motion is only measured when the previous frame was sampled in the same rectangle; samples of
+ * another rectangle differ even in a still scene. Score a fixed window, such as the scan box,
+ * rather than a crop that moves from frame to frame.
+ */
+public final class FrameQualityFilter {
+
+    public static final double DEFAULT_MIN_SHARPNESS = 12.0;
+    public static final double DEFAULT_MAX_MOTION = 40.0;
+
+    private static final int GRID_SIZE = 64;
+
+    private double minSharpness;
+    private double maxMotion;
+    private final byte[] previousSamples = new byte[GRID_SIZE * GRID_SIZE];
+    private int previousLeft;
+    private int previousTop;
+    private int previousStepX;
+    private int previousStepY;
+    private int previousGridWidth;
+    private int previousGridHeight;
+    private long scoredFrames;
+    private long skippedFrames;
+    private double lastSharpness;
+    private double lastMotion;
+
+    public FrameQualityFilter() {
+        this(DEFAULT_MIN_SHARPNESS, DEFAULT_MAX_MOTION);
+    }
+
+    /**
+     * @param minSharpness frames whose Laplacian variance is below this are skipped
+     * @param maxMotion    frames whose mean difference from the previous frame is above this are
+     *                     skipped
+     */
+    public FrameQualityFilter(double minSharpness, double maxMotion) {
+        this.minSharpness = minSharpness;
+        this.maxMotion = maxMotion;
+    }
+
+    public synchronized void setMinSharpness(double minSharpness) {
+        this.minSharpness = minSharpness;
+    }
+
+    public synchronized void setMaxMotion(double maxMotion) {
+        this.maxMotion = maxMotion;
+    }
+
+    /**
+     * Scores the crop rectangle of a frame.
+     *
+     * @return true if the frame is worth decoding
+     */
+    public synchronized boolean accept(byte[] yuvData, int dataWidth,
+                                       int left, int top, int width, int height) {
+        // Leave a one pixel border for the Laplacian
+        int stepX = Math.max(1, (width - 2) / GRID_SIZE);
+        int stepY = Math.max(1, (height - 2) / GRID_SIZE);
+        int gridWidth = Math.min(GRID_SIZE, (width - 2) / stepX);
+        int gridHeight = Math.min(GRID_SIZE, (height - 2) / stepY);
+        if (gridWidth <= 0 || gridHeight <= 0) {
+            return true;
+        }
+        boolean compare = left == previousLeft && top == previousTop
+                && stepX == previousStepX && stepY == previousStepY
+                && gridWidth == previousGridWidth && gridHeight == previousGridHeight;
+
+        long sum = 0;
+        long sumSquares = 0;
+        long difference = 0;
+        int sample = 0;
+        for (int gy = 0; gy < gridHeight; gy++) {
+            int offset = (top + 1 + gy * stepY) * dataWidth + left + 1;
+            for (int gx = 0; gx < gridWidth; gx++, offset += stepX, sample++) {
+                int center = yuvData[offset] & 0xff;
+                int laplacian = 4 * center
+                        - (yuvData[offset - 1] & 0xff) - (yuvData[offset + 1] & 0xff)
+                        - (yuvData[offset - dataWidth] & 0xff) - (yuvData[offset + dataWidth] & 0xff);
+                sum += laplacian;
+                sumSquares += laplacian * laplacian;
+                if (compare) {
+                    difference += Math.abs(center - (previousSamples[sample] & 0xff));
+                }
+                previousSamples[sample] = (byte) center;
+            }
+        }
+        previousLeft = left;
+        previousTop = top;
+        previousStepX = stepX;
+        previousStepY = stepY;
+        previousGridWidth = gridWidth;
+        previousGridHeight = gridHeight;
+
+        double mean = (double) sum / sample;
+        lastSharpness = (double) sumSquares / sample - mean * mean;
+        lastMotion = compare ? (double) difference / sample : 0.0;
+        scoredFrames++;
+        if (lastSharpness < minSharpness || lastMotion > maxMotion) {
+            skippedFrames++;
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized long getScoredFrames() {
+        return scoredFrames;
+    }
+
+    public synchronized long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * @return fraction of scored frames which were skipped
+     */
+    public synchronized double getSkipRate() {
+        return scoredFrames == 0 ? 0.0 : (double) skippedFrames / scoredFrames;
+    }
+
+    public synchronized double getLastSharpness() {
+        return lastSharpness;
+    }
+
+    public synchronized double getLastMotion() {
+        return lastMotion;
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Appends raw preview frames, with their resolution and crop rectangle, to a capture file which
+ * {@link RecordedFrameSource} can replay off-device.
+ *
+ * The file starts with {@link #MAGIC} and {@link #VERSION}, followed by one record per frame:
+ * data width, data height, crop left, top, width and height, the capture time in nanoseconds,
+ * the frame length and the frame bytes, all big-endian.
+ *
+ * {@link #record} only copies the frame; a background thread does the writing, so it is safe to
+ * call from the thread handing frames to the decoder. Frames arriving while the writer is behind
+ * are dropped and counted.
+ */
+public final class FrameRecorder implements Closeable {
+
+    static final int MAGIC = 0x5A584652; // "ZXFR"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int FRAME_HEADER_SIZE = 36;
+
+    private static final int MAX_QUEUED_FRAMES = 4;
+
+    private final FileChannel channel;
+    private final ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+    private final ArrayDeque<Frame> queuedFrames = new ArrayDeque<>(MAX_QUEUED_FRAMES);
+    private final ArrayDeque<Frame> freeFrames = new ArrayDeque<>(MAX_QUEUED_FRAMES);
+    private final Thread writer;
+    private IOException writeError;
+    private long recordedFrames;
+    private long droppedFrames;
+    private boolean closed;
+
+    /**
+     * Opens the capture file for appending, writing the file header if it is new.
+     */
+    public FrameRecorder(File file) throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } else {
+            RecordedFrameSource.checkFileHeader(channel);
+        }
+        channel.position(channel.size());
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeFrames();
+            }
+        }, "FrameRecorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a copy of a frame for writing.
+     *
+     * @return false if the frame was dropped because the writer is behind or was closed
+     */
+    public boolean record(byte[] data, int dataWidth, int dataHeight,
+                          int left, int top, int width, int height) {
+        long timestamp = System.nanoTime();
+        synchronized (this) {
+            if (closed || writeError != null || queuedFrames.size() == MAX_QUEUED_FRAMES) {
+                droppedFrames++;
+                return false;
+            }
+            Frame frame = freeFrames.pollFirst();
+            if (frame == null || frame.data.length != data.length) {
+                frame = new Frame(data.length);
+            }
+            System.arraycopy(data, 0, frame.data, 0, data.length);
+            frame.set(dataWidth, dataHeight, left, top, width, height, timestamp);
+            queuedFrames.addLast(frame);
+            notify();
+            return true;
+        }
+    }
+
+    public synchronized long getRecordedFrames() {
+        return recordedFrames;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Writes out the frames still queued and closes the file.
+     *
+     * @throws IOException if any frame could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notify();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        synchronized (this) {
+            if (writeError != null) {
+                throw writeError;
+            }
+        }
+    }
+
+    private void writeFrames() {
+        while (true) {
+            Frame frame;
+            synchronized (this) {
+                while (queuedFrames.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+                frame = queuedFrames.pollFirst();
+                if (frame == null) {
+                    return;
+                }
+            }
+            try {
+                write(frame);
+                synchronized (this) {
+                    recordedFrames++;
+                    freeFrames.addLast(frame);
+                }
+            } catch (IOException ioe) {
+                synchronized (this) {
+                    writeError = ioe;
+                    queuedFrames.clear();
+                }
+                return;
+            }
+        }
+    }
+
+    private void write(Frame frame) throws IOException {
+        frameHeader.clear();
+        frameHeader.putInt(frame.dataWidth).putInt(frame.dataHeight)
+                .putInt(frame.left).putInt(frame.top).putInt(frame.width).putInt(frame.height)
+                .putLong(frame.timestamp).putInt(frame.data.length).flip();
+        ByteBuffer body = ByteBuffer.wrap(frame.data);
+        while (frameHeader.hasRemaining()) {
+            channel.write(frameHeader);
+        }
+        while (body.hasRemaining()) {
+            channel.write(body);
+        }
+    }
+
+    private static final class Frame {
+        final byte[] data;
+        int dataWidth;
+        int dataHeight;
+        int left;
+        int top;
+        int width;
+        int height;
+        long timestamp;
+
+        Frame(int length) {
+            data = new byte[length];
+        }
+
+        void set(int dataWidth, int dataHeight, int left, int top, int width, int height,
+                 long timestamp) {
+            this.dataWidth = dataWidth;
+            this.dataHeight = dataHeight;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.timestamp = timestamp;
+        }
+    }
+
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+import android.annotation.TargetApi;
+
+import com.zhouk.zxing.Binarizer;
+import com.zhouk.zxing.DecodeHintType;
+import com.zhouk.zxing.DecodeMetrics;
+import com.zhouk.zxing.LuminanceSource;
+import com.zhouk.zxing.NotFoundException;
+import com.zhouk.zxing.PlanarYUVLuminanceSource;
+import com.zhouk.zxing.Result;
+import com.zhouk.zxing.common.GlobalHistogramBinarizer;
+import com.zhouk.zxing.common.HybridBinarizer;
+import com.zhouk.zxing.common.RowStrips;
+import com.zhouk.zxing.common.SauvolaBinarizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs every frame of a {@link FrameSource} through a continuous {@link FrameDecoder}, the same
+ * scan loop the camera uses, and reports throughput and hit rate. Submission waits for a free
+ * worker rather than dropping frames, so numbers from two runs over the same capture are
+ * comparable.
+ *
+ * Usage: {@code java com.zhouk.zxing.decode.FrameReplay capture.bin [workers [stages]]}, where
+ * stages is a comma separated list of {@link BinarizerCascade.Stage} names to decode with, such as
+ * {@code SAUVOLA} or {@code GLOBAL,HYBRID}; without it frames only go through the global
+ * threshold.
+ *
+ * With {@code --binarize capture.bin [frames]} it instead times the binarizers that can split
+ * tall images over a {@link ForkJoinPool}, on whole frames, serially and then on pools of 1, 2, 4
+ * and so on up to the processor count, and prints the time per frame and speedup of each.
+ */
+public final class FrameReplay {
+
+    // Frames the binarizer timing holds in memory, by default
+    private static final int DEFAULT_TIMED_FRAMES = 30;
+    private static final int TIMED_ROUNDS = 5;
+
+    /**
+     * Outcome of one replay.
+     */
+    public static final class Stats {
+
+        private final long frames;
+        private final long decoded;
+        private final long firstDecode;
+        private final long elapsedNanos;
+
+        Stats(long frames, long decoded, long firstDecode, long elapsedNanos) {
+            this.frames = frames;
+            this.decoded = decoded;
+            this.firstDecode = firstDecode;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getDecoded() {
+            return decoded;
+        }
+
+        /**
+         * @return how many frames had finished decoding, counting the first hit, when the first
+         *  one decoded, or 0 if none did
+         */
+        public long getFramesToFirstDecode() {
+            return firstDecode;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getFramesPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : frames * 1.0e9 / elapsedNanos;
+        }
+
+        public double getHitRate() {
+            return frames == 0 ? 0.0 : (double) decoded / frames;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d frames, %d decoded (%.1f%%), first after %d, %.1f frames/s",
+                    frames, decoded, 100.0 * getHitRate(), firstDecode, getFramesPerSecond());
+        }
+    }
+
+    private FrameReplay() {
+    }
+
+    public static Stats replay(FrameSource source, int workerCount, Map<DecodeHintType, ?> hints)
+            throws IOException {
+        return replay(source, workerCount, hints, null);
+    }
+
+    /**
+     * @param cascade binarizers to decode with, or null for the global threshold only
+     */
+    public static Stats replay(FrameSource source, int workerCount, Map<DecodeHintType, ?> hints,
+                               BinarizerCascade cascade) throws IOException {
+        final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            freeBuffers.add(new byte[0]);
+        }
+        // Frames finished, frames decoded, and frames finished when the first one decoded
+        final long[] decoded = new long[3];
+        FrameDecoder frameDecoder = new FrameDecoder(workerCount, hints,
+                FrameDecoder.DIRECT_EXECUTOR, new FrameDecoder.Listener() {
+            @Override
+            public void onDecodeSucceeded(Result rawResult, PlanarYUVLuminanceSource source,
+                                          byte[] data) {
+                synchronized (decoded) {
+                    decoded[0]++;
+                    decoded[1]++;
+                    if (decoded[2] == 0) {
+                        decoded[2] = decoded[0];
+                    }
+                }
+                freeBuffers.add(data);
+            }
+
+            @Override
+            public void onDecodeFailed() {
+                synchronized (decoded) {
+                    decoded[0]++;
+                }
+            }
+
+            @Override
+            public void onFrameReleased(byte[] data) {
+                freeBuffers.add(data);
+            }
+        });
+        frameDecoder.setContinuous(true);
+        frameDecoder.setBinarizerCascade(cascade);
+
+        long frames = 0;
+        long start = System.nanoTime();
+        try {
+            while (source.nextFrame()) {
+                int area = source.getDataWidth() * source.getDataHeight();
+                byte[] buffer = freeBuffers.take();
+                if (buffer.length < area) {
+                    buffer = new byte[area];
+                }
+                source.readLuminance(buffer);
+                frameDecoder.decode(buffer, source.getDataWidth(), source.getDataHeight(),
+                        source.getCropLeft(), source.getCropTop(),
+                        source.getCropWidth(), source.getCropHeight());
+                frames++;
+            }
+            // Wait for the frames still being decoded
+            for (int i = 0; i < workerCount; i++) {
+                freeBuffers.take();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Replay interrupted");
+        } finally {
+            frameDecoder.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+        synchronized (decoded) {
+            return new Stats(frames, decoded[1], decoded[2], elapsed);
+        }
+    }
+
+    /**
+     * Times {@link GlobalHistogramBinarizer}, {@link HybridBinarizer} and {@link SauvolaBinarizer}
+     * over the first frames of the source, whole frames rather than their crops, so that they are
+     * tall enough to be split. Each runs on the calling thread, then on pools of 1, 2, 4, ...
+     * threads up to the processor count.
+     *
+     * @param maxFrames how many frames to read from the source and time over
+     * @return one line per binarizer and pool size: milliseconds per frame and speedup over the
+     *  calling thread
+     */
+    @TargetApi(21)
+    public static String timeBinarizers(FrameSource source, int maxFrames) throws IOException {
+        List<LuminanceSource> frames = new ArrayList<>();
+        while (frames.size() < maxFrames && source.nextFrame()) {
+            int width = source.getDataWidth();
+            int height = source.getDataHeight();
+            byte[] data = new byte[width * height];
+            source.readLuminance(data);
+            frames.add(new PlanarYUVLuminanceSource(data, width, height, 0, 0, width, height, false));
+        }
+        StringBuilder report = new StringBuilder();
+        if (frames.isEmpty()) {
+            return report.append("No frames\n").toString();
+        }
+        if (!RowStrips.isAvailable()) {
+            report.append("No ForkJoinPool, so every run is serial\n");
+        }
+        List<Integer> parallelisms = new ArrayList<>();
+        for (int threads = 1; threads < Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            parallelisms.add(threads);
+        }
+        parallelisms.add(Runtime.getRuntime().availableProcessors());
+        LuminanceSource first = frames.get(0);
+        report.append(String.format(Locale.ENGLISH, "%d frames of %dx%d, %d processors%n",
+                frames.size(), first.getWidth(), first.getHeight(),
+                Runtime.getRuntime().availableProcessors()));
+        for (int kind = 0; kind < 3; kind++) {
+            double serial = timeBinarizer(kind, frames, null);
+            report.append(String.format(Locale.ENGLISH, "%s serial: %.2f ms/frame%n",
+                    binarizer(kind, first, null).getClass().getSimpleName(), serial));
+            for (int threads : parallelisms) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    double parallel = timeBinarizer(kind, frames, pool);
+                    report.append(String.format(Locale.ENGLISH,
+                            "  %d threads: %.2f ms/frame, %.2fx%n", threads, parallel,
+                            serial / parallel));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * @return the best of a few rounds over the frames, after one to warm up, in ms per frame
+     */
+    @TargetApi(21)
+    private static double timeBinarizer(int kind, List<LuminanceSource> frames, ForkJoinPool pool) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round <= TIMED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (LuminanceSource frame : frames) {
+                try {
+                    binarizer(kind, frame, pool).getBlackMatrix();
+                } catch (NotFoundException nfe) {
+                    // A flat frame still counts; it was binarized as far as it could be
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (round > 0) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best / 1.0e6 / frames.size();
+    }
+
+    @TargetApi(21)
+    private static Binarizer binarizer(int kind, LuminanceSource source, ForkJoinPool pool) {
+        switch (kind) {
+            case 0:
+                return new GlobalHistogramBinarizer(source, pool);
+            case 1:
+                return new HybridBinarizer(source, pool);
+            default:
+                return new SauvolaBinarizer(source, 0, SauvolaBinarizer.DEFAULT_K, pool);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: FrameReplay capture-file [workers [stages]]");
+            System.err.println("       FrameReplay --binarize capture-file [frames]");
+            return;
+        }
+        if ("--binarize".equals(args[0])) {
+            if (args.length < 2) {
+                System.err.println("Usage: FrameReplay --binarize capture-file [frames]");
+                return;
+            }
+            int frames = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TIMED_FRAMES;
+            RecordedFrameSource source = new RecordedFrameSource(new File(args[1]));
+            try {
+                System.out.print(timeBinarizers(source, frames));
+            } finally {
+                source.close();
+            }
+            return;
+        }
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : FrameDecoder.defaultWorkerCount();
+        BinarizerCascade cascade = null;
+        if (args.length > 2) {
+            String[] names = args[2].split(",");
+            BinarizerCascade.Stage[] stages = new BinarizerCascade.Stage[names.length];
+            for (int i = 0; i < names.length; i++) {
+                stages[i] = BinarizerCascade.Stage.valueOf(names[i].trim().toUpperCase(Locale.ENGLISH));
+            }
+            cascade = new BinarizerCascade(stages);
+        }
+        RecordedFrameSource source = new RecordedFrameSource(new File(args[0]));
+        DecodeMetrics.setEnabled(true);
+        try {
+            System.out.println(replay(source, workers, null, cascade));
+            System.out.println(DecodeMetrics.snapshot());
+        } finally {
+            source.close();
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sequence of YUV frames, each with the rectangle of it which should be decoded. The accessors
+ * describe the frame most recently returned by {@link #nextFrame()}.
+ */
+public interface FrameSource extends Closeable {
+
+    /**
+     * Advances to the next frame.
+     *
+     * @return false once there are no more frames
+     */
+    boolean nextFrame() throws IOException;
+
+    int getDataWidth();
+
+    int getDataHeight();
+
+    int getCropLeft();
+
+    int getCropTop();
+
+    int getCropWidth();
+
+    int getCropHeight();
+
+    /**
+     * Copies the Y plane of the current frame to the start of {@code luminance}, which must hold at
+     * least {@code getDataWidth() * getDataHeight()} bytes. This is all the decoder reads.
+     */
+    void readLuminance(byte[] luminance);
+
+}
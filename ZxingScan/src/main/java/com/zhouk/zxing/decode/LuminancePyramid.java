@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+import com.zhouk.zxing.DownsampledLuminanceSource;
+import com.zhouk.zxing.LuminanceSource;
+
+/**
+ * Half and quarter resolution copies of a frame, for decoding large, close symbols without
+ * paying for every pixel. Level 0 is the frame itself and each further level halves the one
+ * before it with a {@link DownsampledLuminanceSource}. Levels are only computed when a decode
+ * asks for their pixels, into buffers kept from frame to frame, so one pyramid should be reused
+ * by a single thread.
+ *
+ * A level is only offered while both its sides keep at least {@link #MIN_LEVEL_DIMENSION} pixels,
+ * and, once the symbol's module size is known, while a module stays at least
+ * {@link #MIN_MODULE_SIZE} pixels wide in it; the finder pattern detector needs about that much.
+ */
+public final class LuminancePyramid {
+
+    public static final int MAX_LEVEL = 2;
+    public static final int MIN_LEVEL_DIMENSION = 400;
+    public static final float MIN_MODULE_SIZE = 2.0f;
+
+    private final byte[][] buffers = new byte[MAX_LEVEL + 1][];
+    private final LuminanceSource[] levels = new LuminanceSource[MAX_LEVEL + 1];
+    private int levelCount;
+
+    /**
+     * Starts a pyramid over a new frame, forgetting the levels of the previous one.
+     */
+    public void reset(LuminanceSource source) {
+        levels[0] = source;
+        levelCount = 1;
+        int side = Math.min(source.getWidth(), source.getHeight());
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            levels[level] = null;
+            if ((side >> level) >= MIN_LEVEL_DIMENSION) {
+                levelCount = level + 1;
+            }
+        }
+    }
+
+    /**
+     * @return how many levels the current frame is large enough for, at least 1
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * @param moduleSize the symbol's module size in frame pixels, or 0 if unknown
+     * @return the coarsest level to try first
+     */
+    public int getCoarsestLevel(float moduleSize) {
+        int level = levelCount - 1;
+        if (moduleSize > 0.0f) {
+            while (level > 0 && moduleSize / (1 << level) < MIN_MODULE_SIZE) {
+                level--;
+            }
+        }
+        return level;
+    }
+
+    /**
+     * @return the level, whose coordinates are the frame's divided by 2<sup>level</sup>
+     */
+    public LuminanceSource getLevel(int level) {
+        if (level < 0 || level >= levelCount) {
+            throw new IllegalArgumentException("No level " + level);
+        }
+        LuminanceSource source = levels[level];
+        if (source == null) {
+            LuminanceSource parent = getLevel(level - 1);
+            int length = (parent.getWidth() / 2) * (parent.getHeight() / 2);
+            if (buffers[level] == null || buffers[level].length < length) {
+                buffers[level] = new byte[length];
+            }
+            source = new DownsampledLuminanceSource(parent, buffers[level]);
+            levels[level] = source;
+        }
+        return source;
+    }
+
+}
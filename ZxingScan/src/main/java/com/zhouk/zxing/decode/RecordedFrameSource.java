@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Replays a capture written by {@link FrameRecorder}. The file is memory-mapped in windows of up
+ * to {@link #MAX_WINDOW_SIZE} bytes, so captures larger than the address space of a single
+ * mapping still replay, and nothing is read into an intermediate buffer. The Y plane is still
+ * copied once per frame, from the mapping into the caller's array, as {@link FrameDecoder} decodes
+ * from a byte[].
+ *
+ * A truncated last record, as left when the app dies while recording, ends the replay.
+ */
+public final class RecordedFrameSource implements FrameSource {
+
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position = FrameRecorder.FILE_HEADER_SIZE;
+    private int dataWidth;
+    private int dataHeight;
+    private int cropLeft;
+    private int cropTop;
+    private int cropWidth;
+    private int cropHeight;
+    private long timestamp;
+    private int frameOffset;
+    private int frameLength;
+
+    public RecordedFrameSource(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        channel = this.file.getChannel();
+        size = channel.size();
+        checkFileHeader(channel);
+    }
+
+    static void checkFileHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FrameRecorder.FILE_HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("Not a frame capture: file too short");
+            }
+        }
+        header.flip();
+        if (header.getInt() != FrameRecorder.MAGIC) {
+            throw new IOException("Not a frame capture: bad magic");
+        }
+        int version = header.getInt();
+        if (version != FrameRecorder.VERSION) {
+            throw new IOException("Unsupported frame capture version " + version);
+        }
+    }
+
+    @Override
+    public boolean nextFrame() throws IOException {
+        if (position + FrameRecorder.FRAME_HEADER_SIZE > size) {
+            return false;
+        }
+        map(position, FrameRecorder.FRAME_HEADER_SIZE);
+        ByteBuffer header = window;
+        header.position((int) (position - windowStart));
+        dataWidth = header.getInt();
+        dataHeight = header.getInt();
+        cropLeft = header.getInt();
+        cropTop = header.getInt();
+        cropWidth = header.getInt();
+        cropHeight = header.getInt();
+        timestamp = header.getLong();
+        frameLength = header.getInt();
+        long frameStart = position + FrameRecorder.FRAME_HEADER_SIZE;
+        if (frameLength < dataWidth * dataHeight || frameStart + frameLength > size) {
+            // A truncated last record, e.g. when the app died while recording
+            return false;
+        }
+        map(frameStart, frameLength);
+        frameOffset = (int) (frameStart - windowStart);
+        position = frameStart + frameLength;
+        return true;
+    }
+
+    private void map(long start, int length) throws IOException {
+        if (window == null || start < windowStart || start + length > windowStart + window.capacity()) {
+            long windowSize = Math.min(Math.max(MAX_WINDOW_SIZE, length), size - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, windowSize);
+            windowStart = start;
+        }
+    }
+
+    @Override
+    public int getDataWidth() {
+        return dataWidth;
+    }
+
+    @Override
+    public int getDataHeight() {
+        return dataHeight;
+    }
+
+    @Override
+    public int getCropLeft() {
+        return cropLeft;
+    }
+
+    @Override
+    public int getCropTop() {
+        return cropTop;
+    }
+
+    @Override
+    public int getCropWidth() {
+        return cropWidth;
+    }
+
+    @Override
+    public int getCropHeight() {
+        return cropHeight;
+    }
+
+    /**
+     * @return when the frame was recorded, in {@link System#nanoTime()} units
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public void readLuminance(byte[] luminance) {
+        window.position(frameOffset);
+        window.get(luminance, 0, dataWidth * dataHeight);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+}
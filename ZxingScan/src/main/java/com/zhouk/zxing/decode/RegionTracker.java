@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+import com.zhouk.zxing.ResultPoint;
+import com.zhouk.zxing.qrcode.detector.FinderPattern;
+
+import java.util.List;
+
+/**
+ * Remembers where the last frames found finder patterns, successful decode or not, and narrows
+ * the next frame's crop to a padded box around them. Once the user is aimed at a code only a
+ * small part of the scan window needs to be binarized and searched.
+ *
+ * Points are kept in frame coordinates. The box is padded by half the distance spanned by the
+ * points and at least {@link #MIN_PADDING_MODULES} modules; with fewer than three points the rest
+ * of the code may lie in any direction, so the padding is the whole span and at least
+ * {@link #PARTIAL_PADDING_MODULES} modules. After
+ * {@link #getMaxMisses()} frames in a row which failed to decode the tracker falls back to the
+ * full window for one frame, so a region locked onto noise cannot hide a code elsewhere.
+ */
+public final class RegionTracker {
+
+    public static final int DEFAULT_MAX_MISSES = 4;
+
+    private static final int MIN_PADDING_MODULES = 8;
+    private static final int PARTIAL_PADDING_MODULES = 30;
+    private static final float DEFAULT_MODULE_SIZE = 4.0f;
+    private static final int MIN_REGION_SIZE = 96;
+
+    private final int maxMisses;
+    private boolean tracking;
+    private int regionLeft;
+    private int regionTop;
+    private int regionRight;
+    private int regionBottom;
+    private int misses;
+    private long narrowedFrames;
+    private long fullFrames;
+
+    public RegionTracker() {
+        this(DEFAULT_MAX_MISSES);
+    }
+
+    /**
+     * @param maxMisses frames in a row which failed to decode, finder patterns or not, before
+     *                  the full window is searched again
+     */
+    public RegionTracker(int maxMisses) {
+        if (maxMisses < 1) {
+            throw new IllegalArgumentException("maxMisses must be at least 1");
+        }
+        this.maxMisses = maxMisses;
+    }
+
+    public int getMaxMisses() {
+        return maxMisses;
+    }
+
+    /**
+     * Narrows a crop rectangle to the tracked region.
+     *
+     * @param crop left, top, width and height of the full window, replaced by the area to decode
+     * @return true if the crop was narrowed
+     */
+    public synchronized boolean narrow(int[] crop) {
+        if (!tracking) {
+            fullFrames++;
+            return false;
+        }
+        int left = Math.max(crop[0], regionLeft);
+        int top = Math.max(crop[1], regionTop);
+        int right = Math.min(crop[0] + crop[2], regionRight);
+        int bottom = Math.min(crop[1] + crop[3], regionBottom);
+        if (right - left < MIN_REGION_SIZE || bottom - top < MIN_REGION_SIZE) {
+            // Moved out of the window, or too small to be worth it
+            fullFrames++;
+            return false;
+        }
+        crop[0] = left;
+        crop[1] = top;
+        crop[2] = right - left;
+        crop[3] = bottom - top;
+        narrowedFrames++;
+        return true;
+    }
+
+    /**
+     * Records the points found in one frame.
+     *
+     * @param points    finder patterns and other result points, relative to the crop
+     * @param cropLeft  left edge of the crop the points were found in
+     * @param cropTop   top edge of the crop the points were found in
+     * @param decoded   whether the frame decoded
+     */
+    public synchronized void update(List<ResultPoint> points, int cropLeft, int cropTop,
+                                    boolean decoded) {
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        float moduleSize = 0.0f;
+        int found = 0;
+        int finderPatterns = 0;
+        for (ResultPoint point : points) {
+            if (point == null) {
+                continue;
+            }
+            found++;
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+            if (point instanceof FinderPattern) {
+                moduleSize = Math.max(moduleSize,
+                        ((FinderPattern) point).getEstimatedModuleSize());
+                finderPatterns++;
+            }
+        }
+        if (found > 0) {
+            moveRegion(minX, minY, maxX, maxY, moduleSize, found, finderPatterns, cropLeft, cropTop);
+        }
+        if (decoded) {
+            misses = 0;
+        } else if (tracking && ++misses >= maxMisses) {
+            // Search the full window once, in case the region locked onto noise
+            reset();
+        }
+    }
+
+    private void moveRegion(float minX, float minY, float maxX, float maxY, float moduleSize,
+                            int found, int finderPatterns, int cropLeft, int cropTop) {
+        if (moduleSize == 0.0f) {
+            moduleSize = DEFAULT_MODULE_SIZE;
+        }
+        float span = Math.max(maxX - minX, maxY - minY);
+        float padding = finderPatterns >= 3 || found >= 3
+                ? Math.max(span * 0.5f, moduleSize * MIN_PADDING_MODULES)
+                : Math.max(span, moduleSize * PARTIAL_PADDING_MODULES);
+        regionLeft = cropLeft + (int) (minX - padding);
+        regionTop = cropTop + (int) (minY - padding);
+        regionRight = cropLeft + (int) (maxX + padding + 1.0f);
+        regionBottom = cropTop + (int) (maxY + padding + 1.0f);
+        if (!tracking) {
+            tracking = true;
+            misses = 0;
+        }
+    }
+
+    /**
+     * Forgets the tracked region; the next frame is searched in full.
+     */
+    public synchronized void reset() {
+        tracking = false;
+        misses = 0;
+    }
+
+    public synchronized boolean isTracking() {
+        return tracking;
+    }
+
+    public synchronized long getNarrowedFrames() {
+        return narrowedFrames;
+    }
+
+    public synchronized long getFullFrames() {
+        return fullFrames;
+    }
+
+}
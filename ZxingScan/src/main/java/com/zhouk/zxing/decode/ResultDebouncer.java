@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+import com.zhouk.zxing.Result;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recognizes repeat decodes of the same symbol during continuous scanning, so that a code which
+ * stays in view is delivered once rather than on every frame.
+ *
+ * Results are keyed on format and text. A result counts as a repeat if the same key was seen
+ * less than the window ago; every sighting restarts the window, so a code is only delivered again
+ * once it has been out of view for the whole window. At most {@link #getMaxEntries()} keys are
+ * remembered, the least recently seen being forgotten first.
+ */
+public final class ResultDebouncer {
+
+    public static final long DEFAULT_WINDOW_MS = 3000L;
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private final long windowMs;
+    private final int maxEntries;
+    // Access ordered, so the eldest entry is the least recently seen
+    private final LinkedHashMap<String, Long> lastSeen;
+    private long suppressed;
+
+    public ResultDebouncer() {
+        this(DEFAULT_WINDOW_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param windowMs   how long a symbol must be out of view before it is delivered again
+     * @param maxEntries how many distinct symbols to remember
+     */
+    public ResultDebouncer(long windowMs, final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.windowMs = windowMs;
+        this.maxEntries = maxEntries;
+        lastSeen = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Records a sighting of the result's symbol.
+     *
+     * @return true if the same symbol was seen within the window and should not be delivered
+     */
+    public boolean isRepeat(Result result) {
+        return isRepeat(result, System.nanoTime() / 1000000L);
+    }
+
+    synchronized boolean isRepeat(Result result, long nowMs) {
+        String key = result.getBarcodeFormat() + ":" + result.getText();
+        Long previous = lastSeen.put(key, nowMs);
+        if (previous != null && nowMs - previous < windowMs) {
+            suppressed++;
+            return true;
+        }
+        expire(nowMs);
+        return false;
+    }
+
+    private void expire(long nowMs) {
+        Iterator<Long> iterator = lastSeen.values().iterator();
+        while (iterator.hasNext()) {
+            if (nowMs - iterator.next() < windowMs) {
+                // The rest were seen more recently
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Forgets every symbol seen so far.
+     */
+    public synchronized void clear() {
+        lastSeen.clear();
+    }
+
+    /**
+     * @return the number of repeats recognized
+     */
+    public synchronized long getSuppressed() {
+        return suppressed;
+    }
+
+}
@@ -28,6 +28,7 @@ import com.zhouk.zxing.Result;
 import com.zhouk.zxing.ResultMetadataType;
 import com.zhouk.zxing.ResultPoint;
 import com.zhouk.zxing.common.BitArray;
+import com.zhouk.zxing.common.BitPool;
 
 import java.util.Arrays;
 import java.util.EnumMap;
@@ -105,7 +106,19 @@ public abstract class OneDReader implements Reader {
                           Map<DecodeHintType,?> hints) throws NotFoundException {
     int width = image.getWidth();
     int height = image.getHeight();
-    BitArray row = new BitArray(width);
+    BitArray row = BitPool.acquireArray(width);
+    try {
+      return doDecode(image, hints, width, height, row);
+    } finally {
+      BitPool.release(row);
+    }
+  }
+
+  private Result doDecode(BinaryBitmap image,
+                          Map<DecodeHintType,?> hints,
+                          int width,
+                          int height,
+                          BitArray row) throws NotFoundException {
 
     boolean tryHarder = hints != null && hints.containsKey(DecodeHintType.TRY_HARDER);
     int rowStep = Math.max(1, height >> (tryHarder ? 8 : 5));
@@ -201,17 +214,14 @@ public abstract class OneDReader implements Reader {
     int counterPosition = 0;
     int i = start;
     while (i < end) {
-      if (row.get(i) != isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (++counterPosition == numCounters) {
-          break;
-        } else {
-          counters[counterPosition] = 1;
-          isWhite = !isWhite;
-        }
+      // Jump to the end of the run a word at a time instead of counting pixel by pixel
+      int runEnd = isWhite ? row.getNextSet(i) : row.getNextUnset(i);
+      counters[counterPosition] = runEnd - i;
+      i = runEnd;
+      if (i == end || ++counterPosition == numCounters) {
+        break;
       }
-      i++;
+      isWhite = !isWhite;
     }
     // If we read fully the last section of pixels and filled up our counters -- or filled
     // the last counter but ran off the side of the image, OK. Otherwise, a problem.
@@ -188,11 +188,12 @@ public final class Detector {
     ResultPoint[] result = new ResultPoint[4];
     boolean found = false;
     int[] counters = new int[pattern.length];
+    int[] boundaries = new int[width];
     for (; startRow < height; startRow += ROW_STEP) {
-      int[] loc = findGuardPattern(matrix, startColumn, startRow, width, false, pattern, counters);
+      int[] loc = findGuardPattern(matrix, startColumn, startRow, width, false, pattern, counters, boundaries);
       if (loc != null) {
         while (startRow > 0) {
-          int[] previousRowLoc = findGuardPattern(matrix, startColumn, --startRow, width, false, pattern, counters);
+          int[] previousRowLoc = findGuardPattern(matrix, startColumn, --startRow, width, false, pattern, counters, boundaries);
           if (previousRowLoc != null) {
             loc = previousRowLoc;
           } else {
@@ -212,7 +213,7 @@ public final class Detector {
       int skippedRowCount = 0;
       int[] previousRowLoc = {(int) result[0].getX(), (int) result[1].getX()};
       for (; stopRow < height; stopRow++) {
-        int[] loc = findGuardPattern(matrix, previousRowLoc[0], stopRow, width, false, pattern, counters);
+        int[] loc = findGuardPattern(matrix, previousRowLoc[0], stopRow, width, false, pattern, counters, boundaries);
         // a found pattern is only considered to belong to the same barcode if the start and end positions
         // don't differ too much. Pattern drift should be not bigger than two for consecutive rows. With
         // a higher number of skipped rows drift could be larger. To keep it simple for now, we allow a slightly
@@ -248,15 +249,17 @@ public final class Detector {
    * @param pattern pattern of counts of number of black and white pixels that are
    *                 being searched for as a pattern
    * @param counters array of counters, as long as pattern, to re-use
+   * @param boundaries array of at least width entries to re-use for the row's runs
    * @return start/end horizontal offset of guard pattern, as an array of two ints.
    */
-  private static int[] findGuardPattern(BitMatrix matrix,
-                                        int column,
-                                        int row,
-                                        int width,
-                                        boolean whiteFirst,
-                                        int[] pattern,
-                                        int[] counters) {
+  static int[] findGuardPattern(BitMatrix matrix,
+                                int column,
+                                int row,
+                                int width,
+                                boolean whiteFirst,
+                                int[] pattern,
+                                int[] counters,
+                                int[] boundaries) {
     Arrays.fill(counters, 0, counters.length, 0);
     int patternStart = column;
     int pixelDrift = 0;
@@ -268,11 +271,18 @@ public final class Detector {
     int x = patternStart;
     int counterPosition = 0;
     int patternLength = pattern.length;
-    for (boolean isWhite = whiteFirst; x < width; x++) {
-      boolean pixel = matrix.get(x, row);
-      if (pixel != isWhite) {
-        counters[counterPosition]++;
-      } else {
+    // Walk the row a run at a time. Runs alternate white and black from a white one, so the run
+    // holding x is black if an odd number of boundaries lie at or before x.
+    int runCount = matrix.getRowBoundaries(row, boundaries);
+    int run = 0;
+    while (run < runCount && boundaries[run] <= x) {
+      run++;
+    }
+    for (boolean isWhite = whiteFirst; x < width; run++) {
+      boolean pixel = (run & 1) == 1;
+      int runEnd = run < runCount ? Math.min(boundaries[run], width) : width;
+      if (pixel == isWhite) {
+        // The run starting at x ends the counter before it
         if (counterPosition == patternLength - 1) {
           if (patternMatchVariance(counters, pattern, MAX_INDIVIDUAL_VARIANCE) < MAX_AVG_VARIANCE) {
             return new int[] {patternStart, x};
@@ -285,9 +295,11 @@ public final class Detector {
         } else {
           counterPosition++;
         }
-        counters[counterPosition] = 1;
+        counters[counterPosition] = 0;
         isWhite = !isWhite;
       }
+      counters[counterPosition] += runEnd - x;
+      x = runEnd;
     }
     if (counterPosition == patternLength - 1 &&
         patternMatchVariance(counters, pattern, MAX_INDIVIDUAL_VARIANCE) < MAX_AVG_VARIANCE) {
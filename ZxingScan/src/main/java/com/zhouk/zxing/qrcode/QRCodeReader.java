@@ -16,6 +16,7 @@
 
 package com.zhouk.zxing.qrcode;
 
+import android.annotation.TargetApi;
 import android.util.Log;
 
 import com.zhouk.zxing.BarcodeFormat;
@@ -29,6 +30,7 @@ import com.zhouk.zxing.Result;
 import com.zhouk.zxing.ResultMetadataType;
 import com.zhouk.zxing.ResultPoint;
 import com.zhouk.zxing.common.BitMatrix;
+import com.zhouk.zxing.common.BitPool;
 import com.zhouk.zxing.common.DecoderResult;
 import com.zhouk.zxing.common.DetectorResult;
 import com.zhouk.zxing.qrcode.decoder.Decoder;
@@ -37,6 +39,7 @@ import com.zhouk.zxing.qrcode.detector.Detector;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This implementation can detect and decode QR Codes in an image.
@@ -48,6 +51,20 @@ public class QRCodeReader implements Reader {
   private static final ResultPoint[] NO_POINTS = new ResultPoint[0];
 
   private final Decoder decoder = new Decoder();
+  private final ForkJoinPool pool;
+
+  public QRCodeReader() {
+    this(null);
+  }
+
+  /**
+   * @param pool pool to search tall images for finder patterns on when trying harder, or null to
+   *  stay on the calling thread; ignored where there is no ForkJoinPool, as before API 21
+   */
+  @TargetApi(21)
+  public QRCodeReader(ForkJoinPool pool) {
+    this.pool = pool;
+  }
 
   protected final Decoder getDecoder() {
     return decoder;
@@ -73,11 +90,20 @@ public class QRCodeReader implements Reader {
     ResultPoint[] points;
     if (hints != null && hints.containsKey(DecodeHintType.PURE_BARCODE)) {
       BitMatrix bits = extractPureBits(image.getBlackMatrix());
-      decoderResult = decoder.decode(bits, hints);
+      try {
+        decoderResult = decoder.decode(bits, hints);
+      } finally {
+        BitPool.release(bits);
+      }
       points = NO_POINTS;
     } else {
-      DetectorResult detectorResult = new Detector(image.getBlackMatrix()).detect(hints);
-      decoderResult = decoder.decode(detectorResult.getBits(), hints);
+      DetectorResult detectorResult = new Detector(image.getBlackMatrix(), pool).detect(hints);
+      try {
+        decoderResult = decoder.decode(detectorResult.getBits(), hints);
+      } finally {
+        // The sampled grid is only read by the decoder; nothing in the result refers to it
+        BitPool.release(detectorResult.getBits());
+      }
       points = detectorResult.getPoints();
     }
 
@@ -184,7 +210,7 @@ public class QRCodeReader implements Reader {
     }
 
     // Now just read off the bits
-    BitMatrix bits = new BitMatrix(matrixWidth, matrixHeight);
+    BitMatrix bits = BitPool.acquireMatrix(matrixWidth, matrixHeight);
     for (int y = 0; y < matrixHeight; y++) {
       int iOffset = top + (int) (y * moduleSize);
       for (int x = 0; x < matrixWidth; x++) {
@@ -19,6 +19,7 @@ package com.zhouk.zxing.qrcode.decoder;
 
 import com.zhouk.zxing.FormatException;
 import com.zhouk.zxing.common.BitMatrix;
+import com.zhouk.zxing.common.BitPool;
 
 /**
  * @author Sean Owen
@@ -199,6 +200,7 @@ final class BitMatrixParser {
       }
       readingUp ^= true; // readingUp = !readingUp; // switch directions
     }
+    BitPool.release(functionPattern);
     if (resultOffset != version.getTotalCodewords()) {
       throw FormatException.getFormatInstance();
     }
@@ -19,6 +19,7 @@ package com.zhouk.zxing.qrcode.decoder;
 
 import com.zhouk.zxing.ChecksumException;
 import com.zhouk.zxing.DecodeHintType;
+import com.zhouk.zxing.DecodeMetrics;
 import com.zhouk.zxing.FormatException;
 import com.zhouk.zxing.common.BitMatrix;
 import com.zhouk.zxing.common.DecoderResult;
@@ -92,6 +93,7 @@ public final class Decoder {
     try {
 
       // Revert the bit matrix
+      DecodeMetrics.enter(DecodeMetrics.Stage.FORMAT);
       parser.remask();
 
       // Will be attempting a mirrored reading of the version and format info.
@@ -130,6 +132,7 @@ public final class Decoder {
 
   private DecoderResult decode(BitMatrixParser parser, Map<DecodeHintType,?> hints)
       throws FormatException, ChecksumException {
+    DecodeMetrics.enter(DecodeMetrics.Stage.FORMAT);
     Version version = parser.readVersion();
     ErrorCorrectionLevel ecLevel = parser.readFormatInformation().getErrorCorrectionLevel();
 
@@ -147,6 +150,7 @@ public final class Decoder {
     int resultOffset = 0;
 
     // Error-correct and copy data blocks together into a stream of bytes
+    DecodeMetrics.enter(DecodeMetrics.Stage.REED_SOLOMON);
     for (DataBlock dataBlock : dataBlocks) {
       byte[] codewordBytes = dataBlock.getCodewords();
       int numDataCodewords = dataBlock.getNumDataCodewords();
@@ -157,6 +161,7 @@ public final class Decoder {
     }
 
     // Decode the contents of that stream of bytes
+    DecodeMetrics.enter(DecodeMetrics.Stage.PARSE);
     return DecodedBitStreamParser.decode(resultBytes, version, ecLevel, hints);
   }
 
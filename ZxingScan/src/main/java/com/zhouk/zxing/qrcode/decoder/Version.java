@@ -19,6 +19,7 @@ package com.zhouk.zxing.qrcode.decoder;
 
 import com.zhouk.zxing.FormatException;
 import com.zhouk.zxing.common.BitMatrix;
+import com.zhouk.zxing.common.BitPool;
 
 /**
  * See ISO 18004:2006 Annex D
@@ -136,10 +137,12 @@ public final class Version {
 
   /**
    * See ISO 18004:2006 Annex E
+   *
+   * @return a matrix from the calling thread's {@link BitPool}, which may be released once read
    */
   BitMatrix buildFunctionPattern() {
     int dimension = getDimensionForVersion();
-    BitMatrix bitMatrix = new BitMatrix(dimension);
+    BitMatrix bitMatrix = BitPool.acquireMatrix(dimension, dimension);
 
     // Top left finder pattern + separator + format
     bitMatrix.setRegion(0, 0, 9, 9);
@@ -17,7 +17,10 @@
 package com.zhouk.zxing.qrcode.detector;
 
 
+import android.annotation.TargetApi;
+
 import com.zhouk.zxing.DecodeHintType;
+import com.zhouk.zxing.DecodeMetrics;
 import com.zhouk.zxing.FormatException;
 import com.zhouk.zxing.NotFoundException;
 import com.zhouk.zxing.ResultPoint;
@@ -30,6 +33,7 @@ import com.zhouk.zxing.common.detector.MathUtils;
 import com.zhouk.zxing.qrcode.decoder.Version;
 
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <p>Encapsulates logic that can detect a QR Code in an image, even if the QR Code
@@ -40,10 +44,21 @@ import java.util.Map;
 public class Detector {
 
   private final BitMatrix image;
+  private final ForkJoinPool pool;
   private ResultPointCallback resultPointCallback;
 
   public Detector(BitMatrix image) {
+    this(image, null);
+  }
+
+  /**
+   * @param pool pool to search tall images for finder patterns on when trying harder, or null to
+   *  stay on the calling thread; ignored where there is no ForkJoinPool, as before API 21
+   */
+  @TargetApi(21)
+  public Detector(BitMatrix image, ForkJoinPool pool) {
     this.image = image;
+    this.pool = pool;
   }
 
   protected final BitMatrix getImage() {
@@ -78,7 +93,8 @@ public class Detector {
     resultPointCallback = hints == null ? null :
         (ResultPointCallback) hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
 
-    FinderPatternFinder finder = new FinderPatternFinder(image, resultPointCallback);
+    DecodeMetrics.enter(DecodeMetrics.Stage.FINDER);
+    FinderPatternFinder finder = new FinderPatternFinder(image, resultPointCallback, pool);
     FinderPatternInfo info = finder.find(hints);
 
     return processFinderPatternInfo(info);
@@ -87,6 +103,7 @@ public class Detector {
   protected final DetectorResult processFinderPatternInfo(FinderPatternInfo info)
       throws NotFoundException, FormatException {
 
+    DecodeMetrics.enter(DecodeMetrics.Stage.ALIGNMENT);
     FinderPattern topLeft = info.getTopLeft();
     FinderPattern topRight = info.getTopRight();
     FinderPattern bottomLeft = info.getBottomLeft();
@@ -128,6 +145,7 @@ public class Detector {
       // If we didn't find alignment pattern... well try anyway without it
     }
 
+    DecodeMetrics.enter(DecodeMetrics.Stage.GRID_SAMPLE);
     PerspectiveTransform transform =
         createTransform(topLeft, topRight, bottomLeft, alignmentPattern, dimension);
 
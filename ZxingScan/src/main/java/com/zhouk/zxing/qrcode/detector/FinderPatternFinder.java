@@ -18,13 +18,13 @@ package com.zhouk.zxing.qrcode.detector;
 
 
 import android.annotation.TargetApi;
-import android.os.Build;
 
 import com.zhouk.zxing.DecodeHintType;
 import com.zhouk.zxing.NotFoundException;
 import com.zhouk.zxing.ResultPoint;
 import com.zhouk.zxing.ResultPointCallback;
 import com.zhouk.zxing.common.BitMatrix;
+import com.zhouk.zxing.common.RowStrips;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -33,11 +33,21 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <p>This class attempts to find finder patterns in a QR Code. Finder patterns are the square
  * markers at three corners of a QR Code.</p>
  *
+ * <p>Given a {@link ForkJoinPool} and {@link DecodeHintType#TRY_HARDER}, a tall image is scanned
+ * in bands of rows in parallel. The centers a row confirms depend on nothing but the image, so
+ * the bands scan every row the serial scan starts on, and the serial scan is then replayed over
+ * their results: it skips and stops where it would have, and scans any other row it lands on
+ * itself. The candidates are exactly those of the serial scan. Rows past where it stops are
+ * scanned for nothing, which suits stills, where trying harder scans most of the image anyway,
+ * rather than preview frames. The pool is ignored where there is no ForkJoinPool, as before API
+ * 21.</p>
+ *
  * <p>This class is thread-safe but not reentrant. Each thread must allocate its own object.
  *
  * @author Sean Owen
@@ -48,12 +58,24 @@ public class FinderPatternFinder {
   private static final EstimatedModuleComparator moduleComparator = new EstimatedModuleComparator();
   protected static final int MIN_SKIP = 3; // 1 pixel/module times 3 modules/center
   protected static final int MAX_MODULES = 97; // support up to version 20 for mobile clients
+  // Below this many rows splitting the scan costs more than it saves
+  static final int MIN_PARALLEL_ROWS = 512;
+
+  private static final ThreadLocal<int[]> ROW_BOUNDARIES = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[0];
+    }
+  };
 
   private final BitMatrix image;
   private final List<FinderPattern> possibleCenters;
   private boolean hasSkipped;
   private final int[] crossCheckStateCount;
   private final ResultPointCallback resultPointCallback;
+  private final ForkJoinPool pool;
+  // While scanning rows for a replay: the row's confirmed centers so far, in scan order
+  private List<RowMatch> matches;
 
   /**
    * <p>Creates a finder that will search the image for three finder patterns.</p>
@@ -65,10 +87,33 @@ public class FinderPatternFinder {
   }
 
   public FinderPatternFinder(BitMatrix image, ResultPointCallback resultPointCallback) {
+    this(image, resultPointCallback, null);
+  }
+
+  /**
+   * @param pool pool to scan tall images on when trying harder, or null to stay on the calling
+   *  thread; ignored where there is no ForkJoinPool, as before API 21
+   */
+  @TargetApi(21)
+  public FinderPatternFinder(BitMatrix image, ResultPointCallback resultPointCallback,
+      ForkJoinPool pool) {
     this.image = image;
     this.possibleCenters = new ArrayList<>();
     this.crossCheckStateCount = new int[5];
     this.resultPointCallback = resultPointCallback;
+    this.pool = pool;
+  }
+
+  /**
+   * @return this thread's buffer for the run boundaries of a row of the given width
+   */
+  private static int[] getBoundariesBuffer(int width) {
+    int[] boundaries = ROW_BOUNDARIES.get();
+    if (boundaries.length < width) {
+      boundaries = new int[width];
+      ROW_BOUNDARIES.set(boundaries);
+    }
+    return boundaries;
   }
 
   protected final BitMatrix getImage() {
@@ -96,19 +141,34 @@ public class FinderPatternFinder {
     }
 
     boolean done = false;
+    if (tryHarder && pool != null && maxI >= MIN_PARALLEL_ROWS && RowStrips.isAvailable()) {
+      replay(iSkip, scanBands(iSkip));
+      done = true;
+    }
     int[] stateCount = new int[5];
+    int[] boundaries = getBoundariesBuffer(maxJ);
     for (int i = iSkip - 1; i < maxI && !done; i += iSkip) {
-      // Get a row of black/white values
+      // Get a row of black/white runs; they alternate white and black, starting with a white one
+      int runCount = image.getRowBoundaries(i, boundaries);
       doClearCounts(stateCount);
       int currentState = 0;
-      for (int j = 0; j < maxJ; j++) {
-        if (image.get(j, i)) {
-          // Black pixel
+      int runStart = 0;
+      for (int run = 0; run <= runCount; run++) {
+        int runEnd = run < runCount ? boundaries[run] : maxJ;
+        int length = runEnd - runStart;
+        int j = runStart;
+        runStart = runEnd;
+        if (length == 0) {
+          // Only the leading white run can be empty
+          continue;
+        }
+        if ((run & 1) == 1) {
+          // Black run
           if ((currentState & 1) == 1) { // Counting white pixels
             currentState++;
           }
-          stateCount[currentState]++;
-        } else { // White pixel
+          stateCount[currentState] += length;
+        } else { // White run, whose first pixel j may end a pattern
           if ((currentState & 1) == 0) { // Counting black pixels
             if (currentState == 4) { // A winner?
               if (foundPatternCross(stateCount)) { // Yes
@@ -131,26 +191,29 @@ public class FinderPatternFinder {
                       // of pattern we saw) to be conservative, and also back off by iSkip which
                       // is about to be re-added
                       i += rowSkip - stateCount[2] - iSkip;
-                      j = maxJ - 1;
+                      doClearCounts(stateCount);
+                      break;
                     }
                   }
+                  // Clear state to start looking again; the rest of the run is white
+                  doClearCounts(stateCount);
+                  currentState = length > 1 ? 1 : 0;
+                  stateCount[1] = length - 1;
                 } else {
                   doShiftCounts2(stateCount);
                   currentState = 3;
-                  continue;
+                  stateCount[3] = length;
                 }
-                // Clear state to start looking again
-                currentState = 0;
-                doClearCounts(stateCount);
               } else { // No, shift counts back by two
                 doShiftCounts2(stateCount);
                 currentState = 3;
+                stateCount[3] = length;
               }
             } else {
-              stateCount[++currentState]++;
+              stateCount[++currentState] += length;
             }
           } else { // Counting white pixels
-            stateCount[currentState]++;
+            stateCount[currentState] += length;
           }
         }
       }
@@ -172,6 +235,140 @@ public class FinderPatternFinder {
     return new FinderPatternInfo(patternInfo);
   }
 
+  /**
+   * Scans the rows iSkip - 1, 2 * iSkip - 1, ... in bands on the pool.
+   *
+   * @return the matches of each of those rows, or null where a row had none
+   */
+  @TargetApi(21)
+  private RowMatch[][] scanBands(final int iSkip) {
+    int rows = (image.getHeight() - iSkip) / iSkip + 1;
+    final RowMatch[][] found = new RowMatch[rows][];
+    RowStrips.run(pool, rows, new RowStrips.Strip() {
+      @Override
+      public void run(int start, int end) {
+        FinderPatternFinder band = new FinderPatternFinder(image);
+        band.matches = new ArrayList<>();
+        int[] stateCount = new int[5];
+        int[] boundaries = getBoundariesBuffer(image.getWidth());
+        for (int row = start; row < end; row++) {
+          found[row] = band.scanRow(iSkip - 1 + row * iSkip, stateCount, boundaries);
+        }
+      }
+    });
+    return found;
+  }
+
+  /**
+   * Walks the rows as the serial scan in {@link #find(Map)} does, from the same starting step,
+   * taking the matches of the rows the bands scanned from {@code bands} and scanning any other
+   * row it comes to here.
+   */
+  private void replay(int iSkip, RowMatch[][] bands) {
+    int maxI = image.getHeight();
+    int bandSkip = iSkip;
+    FinderPatternFinder rowFinder = null;
+    int[] stateCount = null;
+    int[] boundaries = null;
+    boolean done = false;
+    for (int i = iSkip - 1; i < maxI && !done; i += iSkip) {
+      RowMatch[] row;
+      if ((i + 1) % bandSkip == 0) {
+        row = bands[i / bandSkip];
+      } else {
+        if (rowFinder == null) {
+          rowFinder = new FinderPatternFinder(image);
+          rowFinder.matches = new ArrayList<>();
+          stateCount = new int[5];
+          boundaries = getBoundariesBuffer(image.getWidth());
+        }
+        row = rowFinder.scanRow(i, stateCount, boundaries);
+      }
+      if (row == null) {
+        continue;
+      }
+      for (RowMatch match : row) {
+        FinderPattern center = match.center;
+        addCenter(center.getY(), center.getX(), center.getEstimatedModuleSize());
+        if (match.atRowEnd) {
+          iSkip = match.firstCount;
+          if (hasSkipped) {
+            done = haveMultiplyConfirmedCenters();
+          }
+        } else {
+          iSkip = 2;
+          if (hasSkipped) {
+            done = haveMultiplyConfirmedCenters();
+          } else {
+            int rowSkip = findRowSkip();
+            if (rowSkip > match.centerCount) {
+              // The serial scan leaves the row here, skipping ahead as it does
+              i += rowSkip - match.centerCount - iSkip;
+              break;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the 1:1:3:1:1 state machine along row i, as {@link #find(Map)} does but without ever
+   * leaving the row early, and collects what {@link #handlePossibleCenter(int[], int, int)}
+   * confirms into {@link #matches} instead of adding it to the candidates.
+   *
+   * @return the row's matches in scan order, or null if it had none
+   */
+  private RowMatch[] scanRow(int i, int[] stateCount, int[] boundaries) {
+    int maxJ = image.getWidth();
+    int runCount = image.getRowBoundaries(i, boundaries);
+    doClearCounts(stateCount);
+    int currentState = 0;
+    int runStart = 0;
+    for (int run = 0; run <= runCount; run++) {
+      int runEnd = run < runCount ? boundaries[run] : maxJ;
+      int length = runEnd - runStart;
+      int j = runStart;
+      runStart = runEnd;
+      if (length == 0) {
+        continue;
+      }
+      if ((run & 1) == 1) {
+        // Black run
+        if ((currentState & 1) == 1) {
+          currentState++;
+        }
+        stateCount[currentState] += length;
+      } else if ((currentState & 1) == 0) { // White run ending a black one
+        if (currentState == 4) {
+          if (foundPatternCross(stateCount) && handlePossibleCenter(stateCount, i, j)) {
+            // Clear state to start looking again; the rest of the run is white
+            doClearCounts(stateCount);
+            currentState = length > 1 ? 1 : 0;
+            stateCount[1] = length - 1;
+          } else {
+            doShiftCounts2(stateCount);
+            currentState = 3;
+            stateCount[3] = length;
+          }
+        } else {
+          stateCount[++currentState] += length;
+        }
+      } else {
+        stateCount[currentState] += length;
+      }
+    }
+    if (foundPatternCross(stateCount)) {
+      handlePossibleCenter(stateCount, i, maxJ);
+    }
+    if (matches.isEmpty()) {
+      return null;
+    }
+    RowMatch[] row = matches.toArray(new RowMatch[matches.size()]);
+    matches.clear();
+    return row;
+  }
+
   /**
    * Given a count of black/white/black/white/black pixels just seen and an end position,
    * figures the location of the center of this run.
@@ -520,22 +717,11 @@ public class FinderPatternFinder {
       centerJ = crossCheckHorizontal((int) centerJ, (int) centerI, stateCount[2], stateCountTotal);
       if (!Float.isNaN(centerJ) && crossCheckDiagonal((int) centerI, (int) centerJ)) {
         float estimatedModuleSize = stateCountTotal / 7.0f;
-        boolean found = false;
-        for (int index = 0; index < possibleCenters.size(); index++) {
-          FinderPattern center = possibleCenters.get(index);
-          // Look for about the same center and module size:
-          if (center.aboutEquals(estimatedModuleSize, centerI, centerJ)) {
-            possibleCenters.set(index, center.combineEstimate(centerI, centerJ, estimatedModuleSize));
-            found = true;
-            break;
-          }
-        }
-        if (!found) {
-          FinderPattern point = new FinderPattern(centerJ, centerI, estimatedModuleSize);
-          possibleCenters.add(point);
-          if (resultPointCallback != null) {
-            resultPointCallback.foundPossibleResultPoint(point);
-          }
+        if (matches != null) {
+          matches.add(new RowMatch(new FinderPattern(centerJ, centerI, estimatedModuleSize),
+              stateCount[0], stateCount[2], j == image.getWidth()));
+        } else {
+          addCenter(centerI, centerJ, estimatedModuleSize);
         }
         return true;
       }
@@ -543,6 +729,25 @@ public class FinderPatternFinder {
     return false;
   }
 
+  /**
+   * Counts a confirmed center towards the candidate about equal to it, or adds it as a new one.
+   */
+  private void addCenter(float centerI, float centerJ, float estimatedModuleSize) {
+    for (int index = 0; index < possibleCenters.size(); index++) {
+      FinderPattern center = possibleCenters.get(index);
+      // Look for about the same center and module size:
+      if (center.aboutEquals(estimatedModuleSize, centerI, centerJ)) {
+        possibleCenters.set(index, center.combineEstimate(centerI, centerJ, estimatedModuleSize));
+        return;
+      }
+    }
+    FinderPattern point = new FinderPattern(centerJ, centerI, estimatedModuleSize);
+    possibleCenters.add(point);
+    if (resultPointCallback != null) {
+      resultPointCallback.foundPossibleResultPoint(point);
+    }
+  }
+
   /**
    * @return number of rows we could safely skip during scanning, based on the first
    *         two finder patterns that have been located. In some cases their position will
@@ -677,6 +882,26 @@ public class FinderPatternFinder {
     return bestPatterns;
   }
 
+  /**
+   * A center confirmed while scanning a row, with what the serial scan decides its next steps by.
+   */
+  static final class RowMatch {
+
+    final FinderPattern center;
+    // The first and center counts of the pattern
+    final int firstCount;
+    final int centerCount;
+    // Whether the pattern ran up to the end of the row
+    final boolean atRowEnd;
+
+    RowMatch(FinderPattern center, int firstCount, int centerCount, boolean atRowEnd) {
+      this.center = center;
+      this.firstCount = firstCount;
+      this.centerCount = centerCount;
+      this.atRowEnd = atRowEnd;
+    }
+  }
+
   /**
    */
   private static final class EstimatedModuleComparator implements Comparator<FinderPattern>, Serializable {
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zhouk.zxing;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that {@link RGBLuminanceSource#fromPixels} weights pixels as the constructor does, and
+ * gives the same luminances on a pool as on the calling thread.
+ */
+public final class RGBLuminanceSourceTest {
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void testCropMatchesConstructor() {
+    Random random = new Random(0x42);
+    for (int n = 0; n < 10; n++) {
+      int width = 1 + random.nextInt(200);
+      int height = 1 + random.nextInt(200);
+      int[] pixels = pixels(random, width, height);
+      LuminanceSource whole = new RGBLuminanceSource(width, height, pixels);
+      int left = random.nextInt(width);
+      int top = random.nextInt(height);
+      int cropWidth = 1 + random.nextInt(width - left);
+      int cropHeight = 1 + random.nextInt(height - top);
+      LuminanceSource crop = RGBLuminanceSource.fromPixels(pixels, width, height, left, top,
+          cropWidth, cropHeight, 1);
+      Assert.assertArrayEquals("image " + n,
+          whole.crop(left, top, cropWidth, cropHeight).getMatrix(), crop.getMatrix());
+    }
+  }
+
+  @Test
+  public void testSubsampleAveragesBoxes() {
+    Random random = new Random(0x43);
+    int width = 64;
+    int height = 48;
+    int[] pixels = pixels(random, width, height);
+    for (int subsample = 2; subsample <= 4; subsample *= 2) {
+      LuminanceSource source = RGBLuminanceSource.fromPixels(pixels, width, height, 0, 0,
+          width, height, subsample);
+      Assert.assertEquals(width / subsample, source.getWidth());
+      Assert.assertEquals(height / subsample, source.getHeight());
+      byte[] matrix = source.getMatrix();
+      for (int y = 0; y < source.getHeight(); y++) {
+        for (int x = 0; x < source.getWidth(); x++) {
+          int sum = 0;
+          for (int yy = y * subsample; yy < (y + 1) * subsample; yy++) {
+            for (int xx = x * subsample; xx < (x + 1) * subsample; xx++) {
+              int pixel = pixels[yy * width + xx];
+              sum += ((pixel >> 16) & 0xff) + 2 * ((pixel >> 8) & 0xff) + (pixel & 0xff);
+            }
+          }
+          Assert.assertEquals(sum / (4 * subsample * subsample),
+              matrix[y * source.getWidth() + x] & 0xff);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPoolMatchesSerial() {
+    Random random = new Random(0x44);
+    for (int n = 0; n < 4; n++) {
+      int subsample = 1 << random.nextInt(3);
+      int width = subsample * (1 + random.nextInt(300));
+      int height = subsample * (256 + random.nextInt(300));
+      int[] pixels = pixels(random, width + 3, height + 5);
+      LuminanceSource serial = RGBLuminanceSource.fromPixels(pixels, width + 3, height + 5, 3, 5,
+          width, height, subsample);
+      LuminanceSource parallel = RGBLuminanceSource.fromPixels(pixels, width + 3, height + 5, 3, 5,
+          width, height, subsample, pool);
+      Assert.assertArrayEquals("image " + n, serial.getMatrix(), parallel.getMatrix());
+    }
+  }
+
+  private static int[] pixels(Random random, int width, int height) {
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+    }
+    return pixels;
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zhouk.zxing.camera;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+
+/**
+ * Checks that {@link PreviewBufferRing} allocates its buffers once per preview size and then only
+ * recycles them.
+ */
+public final class PreviewBufferRingTest {
+
+    private static final int FRAME_SIZE = 640 * 480 * 3 / 2;
+
+    /**
+     * Stands in for the camera: hands out the queued buffers in order.
+     */
+    private static final class FakeCamera implements PreviewBufferRing.BufferQueue {
+        final ArrayDeque<byte[]> buffers = new ArrayDeque<>();
+
+        @Override
+        public void addBuffer(byte[] buffer) {
+            buffers.addLast(buffer);
+        }
+    }
+
+    @Test
+    public void testSizedForDecoder() {
+        // Four workers decoding, one frame being filled and one pinned result
+        Assert.assertEquals(6, PreviewBufferRing.bufferCountFor(4));
+        Assert.assertEquals(3, PreviewBufferRing.bufferCountFor(1));
+    }
+
+    @Test
+    public void testNoSteadyStateAllocations() {
+        int workers = 4;
+        PreviewBufferRing ring = new PreviewBufferRing(PreviewBufferRing.bufferCountFor(workers));
+        FakeCamera camera = new FakeCamera();
+        ring.attach(camera, FRAME_SIZE);
+        long allocated = ring.getAllocatedBuffers();
+        Assert.assertEquals(PreviewBufferRing.bufferCountFor(workers), allocated);
+
+        // Every worker busy and a result pinned, while the camera still has a buffer to fill
+        ArrayDeque<byte[]> held = new ArrayDeque<>();
+        for (int i = 0; i <= workers; i++) {
+            held.addLast(camera.buffers.pollFirst());
+            ring.onFrameDelivered();
+        }
+        Assert.assertFalse("the camera ran out of buffers", camera.buffers.isEmpty());
+
+        for (int frame = 0; frame < 1000; frame++) {
+            ring.recycle(held.pollFirst());
+            byte[] data = camera.buffers.pollFirst();
+            Assert.assertNotNull("the camera ran out of buffers", data);
+            held.addLast(data);
+            ring.onFrameDelivered();
+        }
+        Assert.assertEquals(allocated, ring.getAllocatedBuffers());
+        Assert.assertEquals(1000 + workers + 1, ring.getDeliveredFrames());
+    }
+
+    @Test
+    public void testDropsStaleBuffers() {
+        PreviewBufferRing ring = new PreviewBufferRing(3);
+        FakeCamera camera = new FakeCamera();
+        ring.attach(camera, FRAME_SIZE);
+        byte[] old = camera.buffers.pollFirst();
+
+        // A new preview size allocates a new set; buffers of the old size are not queued again
+        FakeCamera resized = new FakeCamera();
+        ring.attach(resized, FRAME_SIZE / 4);
+        Assert.assertEquals(6, ring.getAllocatedBuffers());
+        ring.recycle(old);
+        Assert.assertEquals(3, resized.buffers.size());
+
+        byte[] current = resized.buffers.pollFirst();
+        ring.detach();
+        Assert.assertFalse(ring.isAttached());
+        ring.recycle(current);
+        Assert.assertEquals(2, resized.buffers.size());
+    }
+
+}
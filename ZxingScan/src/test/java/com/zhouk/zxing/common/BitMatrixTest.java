@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks the run boundaries of {@link BitMatrix} rows against a pixel by pixel walk.
+ */
+public final class BitMatrixTest {
+
+  @Test
+  public void testRowBoundariesOfRandomRuns() {
+    Random random = new Random(0xB0B);
+    for (int n = 0; n < 500; n++) {
+      int width = 1 + random.nextInt(300);
+      int height = 1 + random.nextInt(4);
+      BitMatrix matrix = new BitMatrix(width, height);
+      // Runs of up to maxRun pixels, so that short and word-spanning runs both show up
+      int maxRun = 1 + random.nextInt(80);
+      for (int y = 0; y < height; y++) {
+        boolean black = random.nextBoolean();
+        int x = 0;
+        while (x < width) {
+          int end = Math.min(width, x + 1 + random.nextInt(maxRun));
+          if (black) {
+            matrix.setRegion(x, y, end - x, 1);
+          }
+          x = end;
+          black = !black;
+        }
+      }
+      assertBoundaries(matrix);
+    }
+  }
+
+  @Test
+  public void testRowBoundariesOfUniformRows() {
+    for (int width : new int[] {1, 63, 64, 65, 128, 130}) {
+      BitMatrix matrix = new BitMatrix(width, 3);
+      // A white row, a black row, and a black row under it, so carries between rows would show
+      matrix.setRegion(0, 1, width, 2);
+      assertBoundaries(matrix);
+    }
+  }
+
+  @Test
+  public void testRowBoundariesAtWordEdges() {
+    BitMatrix matrix = new BitMatrix(200, 4);
+    for (int x : new int[] {0, 63, 64, 127, 128, 199}) {
+      matrix.set(x, 0);
+    }
+    matrix.setRegion(60, 1, 10, 1);
+    matrix.setRegion(120, 2, 80, 1);
+    matrix.setRegion(0, 3, 64, 1);
+    assertBoundaries(matrix);
+  }
+
+  private static void assertBoundaries(BitMatrix matrix) {
+    int width = matrix.getWidth();
+    int[] boundaries = new int[width];
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      int[] expected = perPixelBoundaries(matrix, y);
+      int count = matrix.getRowBoundaries(y, boundaries);
+      int[] actual = new int[count];
+      System.arraycopy(boundaries, 0, actual, 0, count);
+      Assert.assertArrayEquals("row " + y + " of " + width + " pixels", expected, actual);
+    }
+  }
+
+  /**
+   * @return every x whose pixel differs from the one before it, as if a white pixel came first
+   */
+  private static int[] perPixelBoundaries(BitMatrix matrix, int y) {
+    int width = matrix.getWidth();
+    int[] boundaries = new int[width];
+    int count = 0;
+    boolean previous = false;
+    for (int x = 0; x < width; x++) {
+      boolean pixel = matrix.get(x, y);
+      if (pixel != previous) {
+        boundaries[count++] = x;
+        previous = pixel;
+      }
+    }
+    int[] result = new int[count];
+    System.arraycopy(boundaries, 0, result, 0, count);
+    return result;
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zhouk.zxing.common;
+
+import com.zhouk.zxing.LuminanceSource;
+import com.zhouk.zxing.PlanarYUVLuminanceSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks that {@link IntegralHybridBinarizer} gives exactly the bits of {@link HybridBinarizer}.
+ */
+public final class IntegralHybridBinarizerTest {
+
+  @Test
+  public void testMatchesHybridBinarizer() throws Exception {
+    Random random = new Random(0x1B);
+    // One thread binarizes every image, so its context is reused across shrinking and growing
+    // sizes, as it is on a decode worker
+    for (int n = 0; n < 200; n++) {
+      int width = HybridBinarizer.MINIMUM_DIMENSION + random.nextInt(300);
+      int height = HybridBinarizer.MINIMUM_DIMENSION + random.nextInt(300);
+      if (n % 4 == 0) {
+        // Some sizes are whole blocks; the rest leave a partial block at the edges
+        width &= ~HybridBinarizer.BLOCK_SIZE_MASK;
+        height &= ~HybridBinarizer.BLOCK_SIZE_MASK;
+      }
+      LuminanceSource source = image(random, width, height);
+      BitMatrix expected = new HybridBinarizer(source).getBlackMatrix();
+      BitMatrix actual = new IntegralHybridBinarizer(source).getBlackMatrix();
+      Assert.assertTrue("image " + n + " of " + width + "x" + height + ": the bits differ",
+          expected.equals(actual));
+    }
+  }
+
+  /**
+   * @return a crop of an image of dark and light blocks under an uneven light, with noise, and
+   *  with a band of blocks too low in contrast to threshold on their own
+   */
+  private static LuminanceSource image(Random random, int width, int height) {
+    int left = random.nextInt(5);
+    int top = random.nextInt(5);
+    int dataWidth = width + left + random.nextInt(5);
+    int dataHeight = height + top + random.nextInt(5);
+    byte[] yuv = new byte[dataWidth * dataHeight * 3 / 2 + dataWidth];
+    int block = 2 + random.nextInt(12);
+    int lowTop = random.nextInt(dataHeight);
+    int lowBottom = lowTop + random.nextInt(dataHeight - lowTop);
+    for (int y = 0; y < dataHeight; y++) {
+      for (int x = 0; x < dataWidth; x++) {
+        boolean dark = ((x / block) * 31 + (y / block) * 17) % 5 < 2;
+        int light = 60 + 140 * x / dataWidth;
+        int value = y >= lowTop && y < lowBottom ?
+            (dark ? 120 : 128) : (dark ? light / 3 : light);
+        value += random.nextInt(9) - 4;
+        yuv[y * dataWidth + x] = (byte) Math.max(0, Math.min(255, value));
+      }
+    }
+    return new PlanarYUVLuminanceSource(yuv, dataWidth, dataHeight, left, top, width, height,
+        false);
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.common;
+
+import com.zhouk.zxing.Binarizer;
+import com.zhouk.zxing.LuminanceSource;
+import com.zhouk.zxing.NotFoundException;
+import com.zhouk.zxing.PlanarYUVLuminanceSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that the binarizers give the same bits when they split a tall image over a pool as when
+ * they run on the calling thread.
+ */
+public final class ParallelBinarizerTest {
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void testForkJoinPoolIsDetected() {
+    Assert.assertTrue(RowStrips.isAvailable());
+    LuminanceSource source = image(new Random(1), 64, GlobalHistogramBinarizer.MIN_PARALLEL_ROWS);
+    GlobalHistogramBinarizer binarizer = new HybridBinarizer(source, pool);
+    Assert.assertTrue(binarizer.isParallel(GlobalHistogramBinarizer.MIN_PARALLEL_ROWS));
+    Assert.assertFalse(binarizer.isParallel(GlobalHistogramBinarizer.MIN_PARALLEL_ROWS - 1));
+    Assert.assertFalse(new HybridBinarizer(source).isParallel(
+        GlobalHistogramBinarizer.MIN_PARALLEL_ROWS));
+  }
+
+  @Test
+  public void testGlobalHistogramMatchesSerial() {
+    Random random = new Random(0x61);
+    for (int n = 0; n < 10; n++) {
+      LuminanceSource source = tallImage(random);
+      assertSameBits("image " + n, new GlobalHistogramBinarizer(source),
+          new GlobalHistogramBinarizer(source, pool));
+    }
+  }
+
+  @Test
+  public void testHybridMatchesSerial() {
+    Random random = new Random(0x4B);
+    for (int n = 0; n < 10; n++) {
+      LuminanceSource source = tallImage(random);
+      assertSameBits("image " + n, new HybridBinarizer(source), new HybridBinarizer(source, pool));
+    }
+  }
+
+  @Test
+  public void testSauvolaMatchesSerial() {
+    Random random = new Random(0x5A);
+    for (int n = 0; n < 6; n++) {
+      LuminanceSource source = tallImage(random);
+      assertSameBits("image " + n, new SauvolaBinarizer(source),
+          new SauvolaBinarizer(source, 0, SauvolaBinarizer.DEFAULT_K, pool));
+    }
+  }
+
+  private static void assertSameBits(String message, Binarizer serial, Binarizer parallel) {
+    BitMatrix expected = blackMatrix(serial);
+    BitMatrix actual = blackMatrix(parallel);
+    if (expected == null) {
+      Assert.assertNull(message + ": only the parallel binarizer found a black point", actual);
+    } else {
+      Assert.assertNotNull(message + ": only the serial binarizer found a black point", actual);
+      Assert.assertTrue(message + ": the bits differ", expected.equals(actual));
+    }
+  }
+
+  private static BitMatrix blackMatrix(Binarizer binarizer) {
+    try {
+      return binarizer.getBlackMatrix();
+    } catch (NotFoundException nfe) {
+      return null;
+    }
+  }
+
+  /**
+   * @return an image at least {@link GlobalHistogramBinarizer#MIN_PARALLEL_ROWS} rows tall, of a
+   *  width that is often not a multiple of 8
+   */
+  private static LuminanceSource tallImage(Random random) {
+    return image(random, 40 + random.nextInt(700),
+        GlobalHistogramBinarizer.MIN_PARALLEL_ROWS + random.nextInt(400));
+  }
+
+  /**
+   * @return an image of dark and light blocks under an uneven light, with noise, and with a band
+   *  of blocks too low in contrast to threshold on their own
+   */
+  private static LuminanceSource image(Random random, int width, int height) {
+    byte[] yuv = new byte[width * height * 3 / 2 + width];
+    int block = 2 + random.nextInt(12);
+    int lowTop = random.nextInt(height);
+    int lowBottom = lowTop + random.nextInt(height - lowTop);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        boolean dark = ((x / block) * 31 + (y / block) * 17) % 5 < 2;
+        int light = 60 + 140 * x / width;
+        int value = y >= lowTop && y < lowBottom ?
+            (dark ? 120 : 128) : (dark ? light / 3 : light);
+        value += random.nextInt(9) - 4;
+        yuv[y * width + x] = (byte) Math.max(0, Math.min(255, value));
+      }
+    }
+    return new PlanarYUVLuminanceSource(yuv, width, height, 0, 0, width, height, false);
+  }
+
+}
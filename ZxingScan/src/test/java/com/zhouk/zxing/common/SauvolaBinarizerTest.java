@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zhouk.zxing.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that {@link SauvolaBinarizer} only keeps the integral images of frames up to
+ * {@link SauvolaBinarizer#MAX_CACHED_SIZE} between calls.
+ */
+public final class SauvolaBinarizerTest {
+
+  @Test
+  public void testOversizedTablesAreNotKept() {
+    SauvolaBinarizer.Context small = SauvolaBinarizer.getContext(640, 480);
+    SauvolaBinarizer.Context frame = SauvolaBinarizer.getContext(1920, 1080);
+    Assert.assertSame(small, frame);
+    Assert.assertTrue(frame.sums.length <= SauvolaBinarizer.MAX_CACHED_SIZE);
+
+    SauvolaBinarizer.Context still = SauvolaBinarizer.getContext(1921, 1081);
+    Assert.assertNotSame(frame, still);
+    Assert.assertTrue(still.sums.length > SauvolaBinarizer.MAX_CACHED_SIZE);
+    // The thread's own context did not grow to fit it
+    SauvolaBinarizer.Context after = SauvolaBinarizer.getContext(640, 480);
+    Assert.assertSame(frame, after);
+    Assert.assertTrue(after.sums.length <= SauvolaBinarizer.MAX_CACHED_SIZE);
+  }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.zhouk.zxing.decode;
+
+import com.zhouk.zxing.BarcodeFormat;
+import com.zhouk.zxing.WriterException;
+import com.zhouk.zxing.common.BitMatrix;
+import com.zhouk.zxing.qrcode.QRCodeWriter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Records synthetic frames with {@link FrameRecorder}, reads them back with
+ * {@link RecordedFrameSource} and replays them with {@link FrameReplay}.
+ */
+public final class FrameCaptureTest {
+
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    private static final int CODE_SIZE = 300;
+
+    private File capture;
+    private byte[][] frames;
+
+    @Before
+    public void record() throws Exception {
+        capture = File.createTempFile("capture", ".bin");
+        Assert.assertTrue(capture.delete());
+        frames = new byte[][] {
+                new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2],
+                frame("first"),
+                frame("second"),
+                frame("third"),
+        };
+        FrameRecorder recorder = new FrameRecorder(capture);
+        try {
+            for (int i = 0; i < frames.length; i++) {
+                Assert.assertTrue("frame " + i + " dropped", recorder.record(frames[i],
+                        FRAME_WIDTH, FRAME_HEIGHT, i, 2 * i, FRAME_WIDTH - i, FRAME_HEIGHT - 2 * i));
+            }
+        } finally {
+            recorder.close();
+        }
+        Assert.assertEquals(frames.length, recorder.getRecordedFrames());
+    }
+
+    @After
+    public void delete() {
+        capture.delete();
+    }
+
+    @Test
+    public void testReadsFramesBack() throws IOException {
+        Assert.assertEquals(frames.length, readAll());
+    }
+
+    @Test
+    public void testSkipsTruncatedFrameData() throws IOException {
+        // The app died while writing the last frame's bytes
+        truncate(100);
+        Assert.assertEquals(frames.length - 1, readAll());
+    }
+
+    @Test
+    public void testSkipsTruncatedFrameHeader() throws IOException {
+        // The app died while writing the last frame's header
+        truncate(frames[frames.length - 1].length + FrameRecorder.FRAME_HEADER_SIZE / 2);
+        Assert.assertEquals(frames.length - 1, readAll());
+    }
+
+    @Test
+    public void testReplaysCapture() throws IOException {
+        truncate(100);
+        RecordedFrameSource source = new RecordedFrameSource(capture);
+        FrameReplay.Stats stats;
+        try {
+            stats = FrameReplay.replay(source, 1, null);
+        } finally {
+            source.close();
+        }
+        // The blank frame fails; the two whole frames with a code decode
+        Assert.assertEquals(3, stats.getFrames());
+        Assert.assertEquals(2, stats.getDecoded());
+        Assert.assertEquals(2, stats.getFramesToFirstDecode());
+    }
+
+    /**
+     * Checks every frame the source gives against the frame recorded.
+     *
+     * @return the number of frames the source gave
+     */
+    private int readAll() throws IOException {
+        RecordedFrameSource source = new RecordedFrameSource(capture);
+        try {
+            int i = 0;
+            byte[] luminance = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+            while (source.nextFrame()) {
+                Assert.assertEquals(FRAME_WIDTH, source.getDataWidth());
+                Assert.assertEquals(FRAME_HEIGHT, source.getDataHeight());
+                Assert.assertEquals(i, source.getCropLeft());
+                Assert.assertEquals(2 * i, source.getCropTop());
+                Assert.assertEquals(FRAME_WIDTH - i, source.getCropWidth());
+                Assert.assertEquals(FRAME_HEIGHT - 2 * i, source.getCropHeight());
+                source.readLuminance(luminance);
+                Assert.assertArrayEquals("frame " + i,
+                        Arrays.copyOf(frames[i], FRAME_WIDTH * FRAME_HEIGHT), luminance);
+                i++;
+            }
+            return i;
+        } finally {
+            source.close();
+        }
+    }
+
+    private void truncate(long bytes) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(capture, "rw");
+        try {
+            file.setLength(file.length() - bytes);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return an NV21 frame with a QR code of the text in its middle, on a gray chroma plane
+     */
+    private static byte[] frame(String text) throws WriterException {
+        BitMatrix code = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, CODE_SIZE, CODE_SIZE);
+        byte[] frame = new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2];
+        int left = (FRAME_WIDTH - CODE_SIZE) / 2;
+        int top = (FRAME_HEIGHT - CODE_SIZE) / 2;
+        for (int y = 0; y < FRAME_HEIGHT; y++) {
+            for (int x = 0; x < FRAME_WIDTH; x++) {
+                boolean black = x >= left && x < left + CODE_SIZE && y >= top && y < top + CODE_SIZE
+                        && code.get(x - left, y - top);
+                frame[y * FRAME_WIDTH + x] = (byte) (black ? 30 : 220);
+            }
+        }
+        for (int i = FRAME_WIDTH * FRAME_HEIGHT; i < frame.length; i++) {
+            frame[i] = (byte) 128;
+        }
+        return frame;
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.decode;
+
+import com.zhouk.zxing.BarcodeFormat;
+import com.zhouk.zxing.PlanarYUVLuminanceSource;
+import com.zhouk.zxing.Result;
+import com.zhouk.zxing.WriterException;
+import com.zhouk.zxing.common.BitMatrix;
+import com.zhouk.zxing.qrcode.QRCodeWriter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs synthetic NV21 frames through {@link FrameDecoder}, without a camera.
+ */
+public final class FrameDecoderTest {
+
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    private static final int CODE_SIZE = 300;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final BlockingQueue<Object> outcomes = new LinkedBlockingQueue<>();
+    private final BlockingQueue<byte[]> released = new LinkedBlockingQueue<>();
+    private final FrameDecoder decoder = new FrameDecoder(1, null, FrameDecoder.DIRECT_EXECUTOR,
+            new FrameDecoder.Listener() {
+                @Override
+                public void onDecodeSucceeded(Result rawResult, PlanarYUVLuminanceSource source,
+                                              byte[] data) {
+                    outcomes.add(rawResult);
+                }
+
+                @Override
+                public void onDecodeFailed() {
+                    outcomes.add(Boolean.FALSE);
+                }
+
+                @Override
+                public void onFrameReleased(byte[] data) {
+                    released.add(data);
+                }
+            });
+
+    @After
+    public void shutdown() {
+        decoder.shutdown();
+    }
+
+    @Test
+    public void testDecodesFrame() throws Exception {
+        Assert.assertTrue(decoder.decode(frame("frame decoder"), FRAME_WIDTH, FRAME_HEIGHT,
+                0, 0, FRAME_WIDTH, FRAME_HEIGHT));
+        Object outcome = nextOutcome();
+        Assert.assertTrue("expected a result, got " + outcome, outcome instanceof Result);
+        Assert.assertEquals("frame decoder", ((Result) outcome).getText());
+        Assert.assertEquals(BarcodeFormat.QR_CODE, ((Result) outcome).getBarcodeFormat());
+    }
+
+    @Test
+    public void testReportsBlankFrameAsFailure() throws Exception {
+        byte[] blank = new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2];
+        Assert.assertTrue(decoder.decode(blank, FRAME_WIDTH, FRAME_HEIGHT,
+                0, 0, FRAME_WIDTH, FRAME_HEIGHT));
+        Assert.assertEquals(Boolean.FALSE, nextOutcome());
+        Assert.assertSame(blank, released.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSurvivesCropOutsideFrame() throws Exception {
+        byte[] broken = frame("first");
+        // Rows below the end of the frame; reading them throws inside the worker
+        Assert.assertTrue(decoder.decode(broken, FRAME_WIDTH, FRAME_HEIGHT,
+                0, FRAME_HEIGHT, FRAME_WIDTH, FRAME_HEIGHT));
+        Assert.assertEquals(Boolean.FALSE, nextOutcome());
+        Assert.assertSame(broken, released.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // The worker is still there for the next frame
+        Assert.assertTrue(decoder.decode(frame("second"), FRAME_WIDTH, FRAME_HEIGHT,
+                0, 0, FRAME_WIDTH, FRAME_HEIGHT));
+        Object outcome = nextOutcome();
+        Assert.assertTrue("expected a result, got " + outcome, outcome instanceof Result);
+        Assert.assertEquals("second", ((Result) outcome).getText());
+    }
+
+    private Object nextOutcome() throws InterruptedException {
+        Object outcome = outcomes.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        Assert.assertNotNull("no decode outcome", outcome);
+        return outcome;
+    }
+
+    /**
+     * @return an NV21 frame with a QR code of the text in its middle, on a gray chroma plane
+     */
+    private static byte[] frame(String text) throws WriterException {
+        BitMatrix code = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, CODE_SIZE, CODE_SIZE);
+        byte[] frame = new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2];
+        int left = (FRAME_WIDTH - CODE_SIZE) / 2;
+        int top = (FRAME_HEIGHT - CODE_SIZE) / 2;
+        for (int y = 0; y < FRAME_HEIGHT; y++) {
+            for (int x = 0; x < FRAME_WIDTH; x++) {
+                boolean black = x >= left && x < left + CODE_SIZE && y >= top && y < top + CODE_SIZE
+                        && code.get(x - left, y - top);
+                frame[y * FRAME_WIDTH + x] = (byte) (black ? 30 : 220);
+            }
+        }
+        for (int i = FRAME_WIDTH * FRAME_HEIGHT; i < frame.length; i++) {
+            frame[i] = (byte) 128;
+        }
+        return frame;
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.pdf417.detector;
+
+import com.zhouk.zxing.common.BitMatrix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks that {@link Detector}'s guard pattern search, which walks each row a run at a time, finds
+ * exactly what its old pixel by pixel search found.
+ */
+public final class DetectorTest {
+
+  private static final float MAX_AVG_VARIANCE = 0.42f;
+  private static final float MAX_INDIVIDUAL_VARIANCE = 0.8f;
+  private static final int MAX_PIXEL_DRIFT = 3;
+  private static final int[] START_PATTERN = {8, 1, 1, 1, 1, 1, 1, 3};
+  private static final int[] STOP_PATTERN = {7, 1, 1, 3, 1, 1, 1, 2, 1};
+
+  @Test
+  public void testGuardPatternMatchesPerPixelSearch() {
+    Random random = new Random(0x417);
+    int found = 0;
+    int foundAtEnd = 0;
+    for (int n = 0; n < 2000; n++) {
+      int[] pattern = random.nextBoolean() ? START_PATTERN : STOP_PATTERN;
+      int width = 20 + random.nextInt(300);
+      BitMatrix matrix = row(random, width, pattern);
+      int[] counters = new int[pattern.length];
+      int[] boundaries = new int[width];
+      for (int k = 0; k < 10; k++) {
+        int column = random.nextInt(width);
+        int searchWidth = random.nextInt(4) == 0 ? column + 1 + random.nextInt(width - column) : width;
+        boolean whiteFirst = random.nextInt(4) == 0;
+        int[] expected = perPixelGuardPattern(matrix, column, 0, searchWidth, whiteFirst, pattern);
+        int[] actual = Detector.findGuardPattern(matrix, column, 0, searchWidth, whiteFirst,
+            pattern, counters, boundaries);
+        Assert.assertArrayEquals("row " + n + " from " + column + " to " + searchWidth,
+            expected, actual);
+        if (expected != null) {
+          found++;
+          if (expected[1] == searchWidth - 1) {
+            foundAtEnd++;
+          }
+        }
+      }
+    }
+    // The rows must hold patterns, including ones that run to the end of the search
+    Assert.assertTrue("no guard pattern found", found > 0);
+    Assert.assertTrue("no guard pattern at the end of a row", foundAtEnd > 0);
+  }
+
+  /**
+   * @return a one row matrix of random bars holding the pattern at a random scale, with every
+   *  bar off by up to a pixel, sometimes ending at the right edge
+   */
+  private static BitMatrix row(Random random, int width, int[] pattern) {
+    BitMatrix matrix = new BitMatrix(width, 1);
+    int scale = 1 + random.nextInt(4);
+    int patternWidth = 0;
+    for (int bar : pattern) {
+      patternWidth += bar * scale + 1;
+    }
+    int patternStart = random.nextInt(3) == 0 ?
+        Math.max(0, width - patternWidth) : random.nextInt(Math.max(1, width - patternWidth));
+    int x = 0;
+    boolean black = random.nextBoolean();
+    while (x < patternStart) {
+      int end = Math.min(patternStart, x + 1 + random.nextInt(6));
+      if (black) {
+        matrix.setRegion(x, 0, end - x, 1);
+      }
+      x = end;
+      black = !black;
+    }
+    for (int i = 0; i < pattern.length && x < width; i++) {
+      int end = Math.min(width, x + Math.max(1, pattern[i] * scale + random.nextInt(3) - 1));
+      if ((i & 1) == 0) {
+        matrix.setRegion(x, 0, end - x, 1);
+      }
+      x = end;
+    }
+    black = false;
+    while (x < width) {
+      int end = Math.min(width, x + 1 + random.nextInt(6));
+      if (black) {
+        matrix.setRegion(x, 0, end - x, 1);
+      }
+      x = end;
+      black = !black;
+    }
+    return matrix;
+  }
+
+  /**
+   * The guard pattern search as it was before it went a run at a time, one step per pixel.
+   */
+  private static int[] perPixelGuardPattern(BitMatrix matrix, int column, int row, int width,
+                                            boolean whiteFirst, int[] pattern) {
+    int[] counters = new int[pattern.length];
+    int patternStart = column;
+    int pixelDrift = 0;
+    while (matrix.get(patternStart, row) && patternStart > 0 && pixelDrift++ < MAX_PIXEL_DRIFT) {
+      patternStart--;
+    }
+    int x = patternStart;
+    int counterPosition = 0;
+    int patternLength = pattern.length;
+    for (boolean isWhite = whiteFirst; x < width; x++) {
+      boolean pixel = matrix.get(x, row);
+      if (pixel != isWhite) {
+        counters[counterPosition]++;
+      } else {
+        if (counterPosition == patternLength - 1) {
+          if (patternMatchVariance(counters, pattern) < MAX_AVG_VARIANCE) {
+            return new int[] {patternStart, x};
+          }
+          patternStart += counters[0] + counters[1];
+          System.arraycopy(counters, 2, counters, 0, counterPosition - 1);
+          counters[counterPosition - 1] = 0;
+          counters[counterPosition] = 0;
+          counterPosition--;
+        } else {
+          counterPosition++;
+        }
+        counters[counterPosition] = 1;
+        isWhite = !isWhite;
+      }
+    }
+    if (counterPosition == patternLength - 1 &&
+        patternMatchVariance(counters, pattern) < MAX_AVG_VARIANCE) {
+      return new int[] {patternStart, x - 1};
+    }
+    return null;
+  }
+
+  private static float patternMatchVariance(int[] counters, int[] pattern) {
+    int total = 0;
+    int patternLength = 0;
+    for (int i = 0; i < counters.length; i++) {
+      total += counters[i];
+      patternLength += pattern[i];
+    }
+    if (total < patternLength) {
+      return Float.POSITIVE_INFINITY;
+    }
+    float unitBarWidth = (float) total / patternLength;
+    float maxIndividualVariance = MAX_INDIVIDUAL_VARIANCE * unitBarWidth;
+    float totalVariance = 0.0f;
+    for (int i = 0; i < counters.length; i++) {
+      float scaledPattern = pattern[i] * unitBarWidth;
+      float variance = Math.abs(counters[i] - scaledPattern);
+      if (variance > maxIndividualVariance) {
+        return Float.POSITIVE_INFINITY;
+      }
+      totalVariance += variance;
+    }
+    return totalVariance / total;
+  }
+
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zhouk.zxing.qrcode.detector;
+
+import com.zhouk.zxing.BarcodeFormat;
+import com.zhouk.zxing.DecodeHintType;
+import com.zhouk.zxing.EncodeHintType;
+import com.zhouk.zxing.NotFoundException;
+import com.zhouk.zxing.ResultPoint;
+import com.zhouk.zxing.WriterException;
+import com.zhouk.zxing.common.BitMatrix;
+import com.zhouk.zxing.common.RowStrips;
+import com.zhouk.zxing.qrcode.QRCodeWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that {@link FinderPatternFinder#find(Map)}, which walks each row a run at a time, finds
+ * exactly the candidates that its old pixel by pixel scan found, and that scanning in bands on a
+ * pool finds exactly what the serial scan finds.
+ */
+public final class FinderPatternFinderTest {
+
+  private static final int CENTER_QUORUM = 2;
+  // Candidates top to bottom, then left to right
+  private static final Comparator<FinderPattern> ROW_ORDER = new Comparator<FinderPattern>() {
+    @Override
+    public int compare(FinderPattern a, FinderPattern b) {
+      int byY = Float.compare(a.getY(), b.getY());
+      return byY != 0 ? byY : Float.compare(a.getX(), b.getX());
+    }
+  };
+
+  @Test
+  public void testMatchesPerPixelScan() throws WriterException {
+    Random random = new Random(0xF1D);
+    PerPixelFinder total = new PerPixelFinder(new BitMatrix(1));
+    for (int n = 0; n < 200; n++) {
+      BitMatrix image = scene(random, 0);
+      for (boolean tryHarder : new boolean[] {false, true}) {
+        FinderPatternFinder finder = new FinderPatternFinder(image);
+        try {
+          finder.find(tryHarder ? hints() : null);
+        } catch (NotFoundException nfe) {
+          // The candidates are compared either way
+        }
+        PerPixelFinder reference = new PerPixelFinder(image);
+        reference.scan(tryHarder);
+        assertSameCenters("scene " + n + (tryHarder ? " trying harder" : ""),
+            reference.getPossibleCenters(), finder.getPossibleCenters());
+        total.add(reference);
+      }
+    }
+    // The scenes must reach every place where a run and a pixel step could disagree
+    Assert.assertTrue("no confirmed center followed by one white pixel",
+        total.confirmedBeforeShortWhite > 0);
+    Assert.assertTrue("no confirmed center followed by a longer white run",
+        total.confirmedBeforeLongWhite > 0);
+    Assert.assertTrue("no rejected center", total.rejected > 0);
+    Assert.assertTrue("no row skipped after two confirmed centers", total.rowSkips > 0);
+    Assert.assertTrue("no pattern at the end of a row", total.endOfRow > 0);
+  }
+
+  @Test
+  public void testBandsMatchSerialScan() throws WriterException {
+    // find() only takes the banded path where there is a ForkJoinPool
+    Assert.assertTrue(RowStrips.isAvailable());
+    Random random = new Random(0xBA2D);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int n = 0; n < 40; n++) {
+        BitMatrix image = scene(random, FinderPatternFinder.MIN_PARALLEL_ROWS);
+        FinderPatternFinder serial = new FinderPatternFinder(image);
+        FinderPatternInfo serialInfo = findOrNull(serial);
+        FinderPatternFinder banded = new FinderPatternFinder(image, null, pool);
+        FinderPatternInfo bandedInfo = findOrNull(banded);
+        assertSameCenters("scene " + n, serial.getPossibleCenters(), banded.getPossibleCenters());
+        if (serialInfo == null || bandedInfo == null) {
+          Assert.assertSame("scene " + n + " found", serialInfo, bandedInfo);
+        } else {
+          Assert.assertEquals("scene " + n + " top left",
+              serialInfo.getTopLeft(), bandedInfo.getTopLeft());
+          Assert.assertEquals("scene " + n + " top right",
+              serialInfo.getTopRight(), bandedInfo.getTopRight());
+          Assert.assertEquals("scene " + n + " bottom left",
+              serialInfo.getBottomLeft(), bandedInfo.getBottomLeft());
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * @return what {@code finder} finds trying harder, or null if it finds nothing
+   */
+  private static FinderPatternInfo findOrNull(FinderPatternFinder finder) {
+    try {
+      return finder.find(hints());
+    } catch (NotFoundException nfe) {
+      // The candidates are compared either way
+      return null;
+    }
+  }
+
+  private static Map<DecodeHintType,Object> hints() {
+    Map<DecodeHintType,Object> hints = new EnumMap<>(DecodeHintType.class);
+    hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+    return hints;
+  }
+
+  private static void assertSameCenters(String message, List<FinderPattern> expected,
+                                        List<FinderPattern> actual) {
+    Collections.sort(expected, ROW_ORDER);
+    Collections.sort(actual, ROW_ORDER);
+    Assert.assertEquals(message, expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      FinderPattern e = expected.get(i);
+      FinderPattern a = actual.get(i);
+      Assert.assertTrue(message + ": " + describe(e) + " != " + describe(a),
+          Float.compare(e.getX(), a.getX()) == 0 &&
+          Float.compare(e.getY(), a.getY()) == 0 &&
+          Float.compare(e.getEstimatedModuleSize(), a.getEstimatedModuleSize()) == 0 &&
+          e.getCount() == a.getCount());
+    }
+  }
+
+  private static String describe(FinderPattern pattern) {
+    return pattern + " module " + pattern.getEstimatedModuleSize() + " seen " + pattern.getCount();
+  }
+
+  /**
+   * @return one or two QR codes side by side at a random scale and place, sometimes flush with
+   *  the right edge, with a sprinkling of flipped pixels so that runs of one pixel border the
+   *  finder patterns. A second code puts more patterns on the rows a confirmed pair skips past.
+   *  The image is at least minHeight rows tall.
+   */
+  private static BitMatrix scene(Random random, int minHeight) throws WriterException {
+    Map<EncodeHintType,Object> hints = new EnumMap<>(EncodeHintType.class);
+    hints.put(EncodeHintType.MARGIN, 0);
+    BitMatrix code = new QRCodeWriter().encode("scene " + random.nextInt(),
+        BarcodeFormat.QR_CODE, 0, 0, hints);
+    int scale = 2 + random.nextInt(5);
+    int codeSize = code.getWidth() * scale;
+    int codes = 1 + random.nextInt(2);
+    int gap = 2 * scale + random.nextInt(20);
+    int codesWidth = codes * codeSize + (codes - 1) * gap;
+    int width = codesWidth + 1 + random.nextInt(200);
+    int height = Math.max(minHeight, codeSize + 1 + random.nextInt(200));
+    int left = random.nextInt(3) == 0 ? width - codesWidth : random.nextInt(width - codesWidth);
+    int top = random.nextInt(height - codeSize);
+    BitMatrix image = new BitMatrix(width, height);
+    for (int c = 0; c < codes; c++) {
+      int codeLeft = left + c * (codeSize + gap);
+      for (int y = 0; y < code.getHeight(); y++) {
+        for (int x = 0; x < code.getWidth(); x++) {
+          if (code.get(x, y)) {
+            image.setRegion(codeLeft + x * scale, top + y * scale, scale, scale);
+          }
+        }
+      }
+    }
+    int flips = random.nextInt(width * height / 50 + 1);
+    for (int i = 0; i < flips; i++) {
+      image.flip(random.nextInt(width), random.nextInt(height));
+    }
+    return image;
+  }
+
+  /**
+   * The row scan of {@link FinderPatternFinder#find(Map)} as it was before it went a run at a
+   * time, one step per pixel, counting how often it takes each of the paths the run scan has to
+   * reproduce.
+   */
+  private static final class PerPixelFinder extends FinderPatternFinder {
+
+    private boolean hasSkipped;
+    int confirmedBeforeShortWhite;
+    int confirmedBeforeLongWhite;
+    int rejected;
+    int rowSkips;
+    int endOfRow;
+
+    PerPixelFinder(BitMatrix image) {
+      super(image);
+    }
+
+    void add(PerPixelFinder other) {
+      confirmedBeforeShortWhite += other.confirmedBeforeShortWhite;
+      confirmedBeforeLongWhite += other.confirmedBeforeLongWhite;
+      rejected += other.rejected;
+      rowSkips += other.rowSkips;
+      endOfRow += other.endOfRow;
+    }
+
+    void scan(boolean tryHarder) {
+      BitMatrix image = getImage();
+      int maxI = image.getHeight();
+      int maxJ = image.getWidth();
+      int iSkip = (3 * maxI) / (4 * MAX_MODULES);
+      if (iSkip < MIN_SKIP || tryHarder) {
+        iSkip = MIN_SKIP;
+      }
+
+      boolean done = false;
+      int[] stateCount = new int[5];
+      for (int i = iSkip - 1; i < maxI && !done; i += iSkip) {
+        doClearCounts(stateCount);
+        int currentState = 0;
+        for (int j = 0; j < maxJ; j++) {
+          if (image.get(j, i)) {
+            if ((currentState & 1) == 1) {
+              currentState++;
+            }
+            stateCount[currentState]++;
+          } else {
+            if ((currentState & 1) == 0) {
+              if (currentState == 4) {
+                if (foundPatternCross(stateCount)) {
+                  boolean confirmed = handlePossibleCenter(stateCount, i, j);
+                  if (confirmed) {
+                    if (j + 1 == maxJ || image.get(j + 1, i)) {
+                      confirmedBeforeShortWhite++;
+                    } else {
+                      confirmedBeforeLongWhite++;
+                    }
+                    iSkip = 2;
+                    if (hasSkipped) {
+                      done = haveMultiplyConfirmedCenters();
+                    } else {
+                      int rowSkip = findRowSkip();
+                      if (rowSkip > stateCount[2]) {
+                        rowSkips++;
+                        i += rowSkip - stateCount[2] - iSkip;
+                        j = maxJ - 1;
+                      }
+                    }
+                  } else {
+                    rejected++;
+                    doShiftCounts2(stateCount);
+                    currentState = 3;
+                    continue;
+                  }
+                  currentState = 0;
+                  doClearCounts(stateCount);
+                } else {
+                  doShiftCounts2(stateCount);
+                  currentState = 3;
+                }
+              } else {
+                stateCount[++currentState]++;
+              }
+            } else {
+              stateCount[currentState]++;
+            }
+          }
+        }
+        if (foundPatternCross(stateCount)) {
+          endOfRow++;
+          boolean confirmed = handlePossibleCenter(stateCount, i, maxJ);
+          if (confirmed) {
+            iSkip = stateCount[0];
+            if (hasSkipped) {
+              done = haveMultiplyConfirmedCenters();
+            }
+          }
+        }
+      }
+    }
+
+    private int findRowSkip() {
+      List<FinderPattern> possibleCenters = getPossibleCenters();
+      if (possibleCenters.size() <= 1) {
+        return 0;
+      }
+      ResultPoint firstConfirmedCenter = null;
+      for (FinderPattern center : possibleCenters) {
+        if (center.getCount() >= CENTER_QUORUM) {
+          if (firstConfirmedCenter == null) {
+            firstConfirmedCenter = center;
+          } else {
+            hasSkipped = true;
+            return (int) (Math.abs(firstConfirmedCenter.getX() - center.getX()) -
+                Math.abs(firstConfirmedCenter.getY() - center.getY())) / 2;
+          }
+        }
+      }
+      return 0;
+    }
+
+    private boolean haveMultiplyConfirmedCenters() {
+      List<FinderPattern> possibleCenters = getPossibleCenters();
+      int confirmedCount = 0;
+      float totalModuleSize = 0.0f;
+      for (FinderPattern pattern : possibleCenters) {
+        if (pattern.getCount() >= CENTER_QUORUM) {
+          confirmedCount++;
+          totalModuleSize += pattern.getEstimatedModuleSize();
+        }
+      }
+      if (confirmedCount < 3) {
+        return false;
+      }
+      float average = totalModuleSize / possibleCenters.size();
+      float totalDeviation = 0.0f;
+      for (FinderPattern pattern : possibleCenters) {
+        totalDeviation += Math.abs(pattern.getEstimatedModuleSize() - average);
+      }
+      return totalDeviation <= 0.05f * totalModuleSize;
+    }
+  }
+
+}